@@ -17,20 +17,32 @@
 
 package org.openengsb.connector.git.domain;
 
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.openengsb.domain.scm.TagRef;
 
 public class GitTagRef implements TagRef {
     private RevTag tagRef;
+    private String tagName;
+    private AnyObjectId tagId;
 
     public GitTagRef(RevTag tagRef) {
         this.tagRef = tagRef;
     }
 
+    /**
+     * Creates a reference from an indexed tag without parsing the tag object. For lightweight tags {@code tagId} is
+     * the id of the tagged commit.
+     */
+    public GitTagRef(String tagName, AnyObjectId tagId) {
+        this.tagName = tagName;
+        this.tagId = tagId;
+    }
+
     @Override
     public String getTagName() {
         if (tagRef == null) {
-            return null;
+            return tagName;
         }
         return tagRef.getTagName();
     }
@@ -38,7 +50,7 @@ public class GitTagRef implements TagRef {
     @Override
     public String getStringRepresentation() {
         if (tagRef == null) {
-            return null;
+            return tagId == null ? null : tagId.name();
         }
         return tagRef.name();
     }
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.domain;
+
+/**
+ * A single match of a content search: the file it was found in, the 1-based line number, the offset of the match
+ * within that line and the line itself.
+ */
+public class SearchMatch {
+    private final String path;
+    private final int line;
+    private final int offset;
+    private final String text;
+
+    public SearchMatch(String path, int line, int offset, String text) {
+        this.path = path;
+        this.line = line;
+        this.offset = offset;
+        this.text = text;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return path + ":" + line + ":" + offset + ": " + text;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.domain;
+
+/**
+ * An entry of a directory listing: its name, its path relative to the listed directory, its git file mode, the id
+ * of the blob or tree and, if requested, the size of a blob in bytes ({@code -1} otherwise).
+ */
+public class TreeEntry {
+    private final String name;
+    private final String path;
+    private final int mode;
+    private final String id;
+    private final long size;
+
+    public TreeEntry(String name, String path, int mode, String id, long size) {
+        this.name = name;
+        this.path = path;
+        this.mode = mode;
+        this.id = id;
+        this.size = size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isDirectory() {
+        return (mode & 0170000) == 0040000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%06o %s %s", mode, id, path);
+    }
+}
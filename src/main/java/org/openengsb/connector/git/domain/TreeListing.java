@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.domain;
+
+import java.util.List;
+
+/**
+ * One page of a directory listing. {@link #getCursor()} continues the listing with the next page and is
+ * {@code null} once the listing is complete.
+ */
+public class TreeListing {
+    private final List<TreeEntry> entries;
+    private final String cursor;
+
+    public TreeListing(List<TreeEntry> entries, String cursor) {
+        this.entries = entries;
+        this.cursor = cursor;
+    }
+
+    public List<TreeEntry> getEntries() {
+        return entries;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean hasMore() {
+        return cursor != null;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Least recently used cache of blob contents, keyed by blob id and bounded by the total size of the cached contents.
+ * <p>
+ * Only blobs of at most {@code maxBlobSize} bytes are admitted, so that a single large file cannot evict the small,
+ * frequently read ones. Since blob ids name their content, entries never become stale; a hit does not touch the
+ * object database at all.
+ */
+public class BlobContentCache {
+    private final long budget;
+    private final long maxBlobSize;
+    private final Map<ObjectId, byte[]> entries = new LinkedHashMap<ObjectId, byte[]>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BlobContentCache(long budget, long maxBlobSize) {
+        this.budget = budget;
+        this.maxBlobSize = Math.min(maxBlobSize, budget);
+    }
+
+    /**
+     * Returns whether a blob of {@code blobSize} bytes would be admitted to the cache.
+     */
+    public boolean admits(long blobSize) {
+        return blobSize <= maxBlobSize;
+    }
+
+    /**
+     * Returns the cached content of a blob, or {@code null} if it is not cached. The returned array must not be
+     * modified.
+     */
+    public synchronized byte[] get(AnyObjectId blob) {
+        byte[] content = entries.get(blob);
+        if (content == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return content;
+    }
+
+    public synchronized void put(AnyObjectId blob, byte[] content) {
+        if (content.length > maxBlobSize || entries.containsKey(blob)) {
+            return;
+        }
+        entries.put(blob.copy(), content);
+        size += content.length;
+        Iterator<byte[]> iterator = entries.values().iterator();
+        while (size > budget && iterator.hasNext()) {
+            size -= iterator.next().length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Share of lookups answered from the cache, or {@code 0} if there were none yet.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store of inflated blob contents keyed by blob id, used to materialize exported files.
+ * <p>
+ * Every blob is inflated into the store once. Exported files are created as hard links to the stored file where the
+ * runtime and file system support it. Stored files are read-only, so hard linked exports cannot modify the store;
+ * consumers have to copy an exported file before changing it. The first link that fails for another reason than an
+ * existing target, e.g. because the export is on another file system, switches the store off: from then on, and for
+ * executables, blobs are written straight to the exported file, so that they are not inflated twice.
+ * <p>
+ * The references to a stored blob are counted by the file system: its link count is one plus the number of exported
+ * files linking to it. {@link #gc()} removes the blobs no export refers to anymore; it waits for running
+ * materializations, so that a blob cannot vanish between being looked up and being linked. Hard links need Java 7,
+ * they are created through reflection so that the connector still runs on Java 6 with copies only.
+ */
+public class BlobStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlobStore.class);
+    private static final long GC_GRACE_PERIOD = 60 * 1000;
+
+    private final File directory;
+    private final long gcGracePeriod;
+    private final AtomicLong counter = new AtomicLong();
+    private final ReadWriteLock gcLock = new ReentrantReadWriteLock();
+    private Method toPath;
+    private Method createLink;
+    private Method getAttribute;
+    private Object noLinkOptions;
+    private volatile boolean linksSupported;
+
+    public BlobStore(File directory) {
+        this(directory, GC_GRACE_PERIOD);
+    }
+
+    /**
+     * @param gcGracePeriod minimum age in milliseconds of blobs removed by {@link #gc()}, which protects blobs
+     *        stored but not linked yet
+     */
+    BlobStore(File directory, long gcGracePeriod) {
+        this.directory = directory;
+        this.gcGracePeriod = gcGracePeriod;
+        try {
+            Class<?> files = Class.forName("java.nio.file.Files");
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+            noLinkOptions = Array.newInstance(linkOption, 0);
+            toPath = File.class.getMethod("toPath");
+            createLink = files.getMethod("createLink", path, path);
+            getAttribute = files.getMethod("getAttribute", path, String.class, noLinkOptions.getClass());
+            linksSupported = true;
+        } catch (Exception e) {
+            LOGGER.debug("Hard links are not supported by this runtime, exports are copied from the blob store");
+        }
+    }
+
+    /**
+     * Creates {@code target} with the content of blob {@code id}, as hard link to the store if possible.
+     *
+     * @return whether {@code target} is a hard link
+     */
+    public boolean materialize(ObjectReader reader, ObjectId id, File target, boolean executable)
+        throws IOException {
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        // the executable bit belongs to the shared inode, so executables are never linked
+        if (!executable && linksSupported) {
+            gcLock.readLock().lock();
+            try {
+                File blob = store(reader, id);
+                if (link(blob, target)) {
+                    return true;
+                }
+                FileUtils.copyFile(blob, target);
+            } finally {
+                gcLock.readLock().unlock();
+            }
+        } else {
+            write(reader, id, target);
+        }
+        target.setWritable(true);
+        if (executable) {
+            target.setExecutable(true);
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the stored blobs that no exported file links to anymore.
+     *
+     * @return the number of deleted blobs
+     */
+    public int gc() {
+        gcLock.writeLock().lock();
+        try {
+            return collectUnlinked();
+        } finally {
+            gcLock.writeLock().unlock();
+        }
+    }
+
+    private int collectUnlinked() {
+        File[] fanout = directory.listFiles();
+        if (fanout == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        for (File subdirectory : fanout) {
+            File[] blobs = subdirectory.listFiles();
+            if (blobs == null) {
+                continue;
+            }
+            for (File blob : blobs) {
+                if (now - blob.lastModified() < gcGracePeriod || linkCount(blob) > 1) {
+                    continue;
+                }
+                blob.setWritable(true);
+                if (blob.delete()) {
+                    deleted++;
+                }
+            }
+            subdirectory.delete();
+        }
+        LOGGER.debug("Removed {} unreferenced blobs from {}", deleted, directory);
+        return deleted;
+    }
+
+    /**
+     * Number of links to a stored blob, including the store itself, or {@code -1} if unknown.
+     */
+    int linkCount(File blob) {
+        if (!linksSupported) {
+            return -1;
+        }
+        try {
+            Object count = getAttribute.invoke(null, toPath.invoke(blob), "unix:nlink", noLinkOptions);
+            return ((Number) count).intValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    boolean isLinksSupported() {
+        return linksSupported;
+    }
+
+    File fileFor(ObjectId id) {
+        String name = id.name();
+        return new File(new File(directory, name.substring(0, 2)), name.substring(2));
+    }
+
+    private File store(ObjectReader reader, ObjectId id) throws IOException {
+        File blob = fileFor(id);
+        if (blob.isFile()) {
+            return blob;
+        }
+        File parent = blob.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File tmp = new File(parent, blob.getName() + ".tmp" + counter.incrementAndGet());
+        write(reader, id, tmp);
+        tmp.setReadOnly();
+        if (!tmp.renameTo(blob)) {
+            // another thread stored the same blob meanwhile
+            tmp.setWritable(true);
+            tmp.delete();
+            if (!blob.isFile()) {
+                throw new IOException("Cannot store blob " + id.name());
+            }
+        }
+        return blob;
+    }
+
+    private static void write(ObjectReader reader, ObjectId id, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            reader.open(id, Constants.OBJ_BLOB).copyTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean link(File blob, File target) {
+        if (!linksSupported) {
+            return false;
+        }
+        try {
+            createLink.invoke(null, toPath.invoke(target), toPath.invoke(blob));
+            return true;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause.getClass().getName().equals("java.nio.file.FileAlreadyExistsException")) {
+                LOGGER.debug("Cannot link {} to the blob store: {}", target, cause.toString());
+                return false;
+            }
+            // e.g. a cross-device link, which fails the same way for every other file
+            LOGGER.info("Cannot link exports to the blob store {}, writing them directly: {}", directory,
+                cause.toString());
+            linksSupported = false;
+            return false;
+        } catch (IllegalAccessException e) {
+            linksSupported = false;
+            return false;
+        }
+    }
+}
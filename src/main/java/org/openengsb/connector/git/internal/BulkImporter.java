@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.util.NB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds many files of the working directory to the index at once, writing their blobs into a single new pack instead
+ * of one loose object per file.
+ * <p>
+ * The blobs are deflated into a temporary pack body, skipping contents already in the repository or seen before. The
+ * completed pack is then handed to the repository's pack parser, which writes the final pack and its index. Finally
+ * the index entries of all imported paths are replaced in one go, so that a single commit picks them up.
+ */
+public class BulkImporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkImporter.class);
+    private static final int PACK_VERSION = 2;
+
+    private final FileRepository repository;
+    private final Set<ObjectId> packed = new HashSet<ObjectId>();
+    private final Map<String, DirCacheEntry> entries = new LinkedHashMap<String, DirCacheEntry>();
+    private final ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final byte[] buffer = new byte[8192];
+
+    public BulkImporter(FileRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Imports the given files, and all files below the given directories, and stages them in the index.
+     *
+     * @return the number of index entries written
+     */
+    public int importFiles(List<File> files) throws IOException {
+        File packDirectory = new File(repository.getObjectsDirectory(), "pack");
+        packDirectory.mkdirs();
+        File body = File.createTempFile("bulk_", ".tmp", packDirectory);
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(body));
+            try {
+                for (File file : files) {
+                    collect(file, out);
+                }
+            } finally {
+                out.close();
+            }
+            if (!packed.isEmpty()) {
+                parsePack(body);
+            }
+            LOGGER.debug("Bulk imported {} files with {} new blobs", entries.size(), packed.size());
+            stage();
+            return entries.size();
+        } finally {
+            deflater.end();
+            FileUtils.deleteQuietly(body);
+        }
+    }
+
+    private void collect(File file, OutputStream out) throws IOException {
+        if (file.isDirectory()) {
+            if (Constants.DOT_GIT.equals(file.getName())) {
+                return;
+            }
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, out);
+                }
+            }
+            return;
+        }
+        if (!file.isFile()) {
+            throw new IOException("File " + file + " is not a valid file to commit.");
+        }
+        byte[] content = FileUtils.readFileToByteArray(file);
+        ObjectId id = formatter.idFor(Constants.OBJ_BLOB, content);
+        if (!packed.contains(id) && !repository.hasObject(id)) {
+            writeObject(out, content);
+            packed.add(id);
+        }
+        DirCacheEntry entry = new DirCacheEntry(relativePath(file));
+        boolean executable = repository.getFS().supportsExecute() && repository.getFS().canExecute(file);
+        entry.setFileMode(executable ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE);
+        entry.setObjectId(id);
+        entry.setLength((int) file.length());
+        entry.setLastModified(file.lastModified());
+        entries.put(entry.getPathString(), entry);
+    }
+
+    /**
+     * Appends one blob in pack entry format: the type and size header followed by the deflated content.
+     */
+    private void writeObject(OutputStream out, byte[] content) throws IOException {
+        long size = content.length;
+        int header = Constants.OBJ_BLOB << 4 | (int) (size & 0x0f);
+        size >>>= 4;
+        while (size != 0) {
+            out.write(header | 0x80);
+            header = (int) (size & 0x7f);
+            size >>>= 7;
+        }
+        out.write(header);
+        deflater.reset();
+        deflater.setInput(content);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Prefixes the pack body with the pack header, appends the checksum and lets the repository index and store it.
+     */
+    private void parsePack(File body) throws IOException {
+        byte[] header = new byte[12];
+        System.arraycopy(Constants.PACK_SIGNATURE, 0, header, 0, 4);
+        NB.encodeInt32(header, 4, PACK_VERSION);
+        NB.encodeInt32(header, 8, packed.size());
+        MessageDigest digest = Constants.newMessageDigest();
+        digest.update(header);
+        InputStream in = new FileInputStream(body);
+        try {
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        byte[] trailer = digest.digest();
+
+        InputStream pack = new SequenceInputStream(new ByteArrayInputStream(header), new SequenceInputStream(
+            new BufferedInputStream(new FileInputStream(body)), new ByteArrayInputStream(trailer)));
+        ObjectInserter inserter = repository.newObjectInserter();
+        try {
+            PackParser parser = inserter.newPackParser(pack);
+            parser.parse(NullProgressMonitor.INSTANCE);
+            inserter.flush();
+        } finally {
+            inserter.release();
+            pack.close();
+        }
+    }
+
+    /**
+     * Replaces the index entries of all imported paths, keeping every other entry.
+     */
+    private void stage() throws IOException {
+        DirCache cache = repository.lockDirCache();
+        try {
+            DirCacheBuilder builder = cache.builder();
+            for (int i = 0; i < cache.getEntryCount(); i++) {
+                DirCacheEntry existing = cache.getEntry(i);
+                if (!entries.containsKey(existing.getPathString())) {
+                    builder.add(existing);
+                }
+            }
+            for (DirCacheEntry entry : entries.values()) {
+                builder.add(entry);
+            }
+            builder.finish();
+            cache.write();
+            if (!cache.commit()) {
+                throw new IOException("Cannot commit index of " + repository.getDirectory());
+            }
+        } finally {
+            cache.unlock();
+        }
+    }
+
+    private String relativePath(File file) throws IOException {
+        String root = repository.getWorkTree().getCanonicalPath();
+        String path = file.getCanonicalPath();
+        if (!path.startsWith(root + File.separator)) {
+            throw new IOException("File " + file + " is not in working directory.");
+        }
+        return path.substring(root.length() + 1).replace(File.separatorChar, '/');
+    }
+}
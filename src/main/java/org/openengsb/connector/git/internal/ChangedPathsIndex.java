@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persisted index of the paths changed by every commit reachable from HEAD, compared to the commit's first parent.
+ * <p>
+ * The index lives in {@code .git/openengsb} as an append-only log of per-commit records plus a small file holding
+ * the HEAD commits the log was last extended to. Extending the index only diffs the commits added since then. If
+ * HEAD no longer contains the indexed commits, e.g. after a reset, the index is rebuilt, so that it always covers
+ * exactly the history of its tip.
+ */
+public class ChangedPathsIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangedPathsIndex.class);
+
+    private static final String INDEX_FILE = "changed-paths";
+    private static final String TIPS_FILE = "changed-paths.tips";
+
+    private final Repository repository;
+    private final File indexFile;
+    private final File tipsFile;
+
+    private final List<ObjectId> commits = new ArrayList<ObjectId>();
+    private final List<Integer> commitTimes = new ArrayList<Integer>();
+    private final Map<ObjectId, Integer> positions = new HashMap<ObjectId, Integer>();
+    private final TreeMap<String, List<Integer>> pathToCommits = new TreeMap<String, List<Integer>>();
+    private final Set<ObjectId> tips = new LinkedHashSet<ObjectId>();
+
+    public ChangedPathsIndex(Repository repository) throws IOException {
+        this.repository = repository;
+        File directory = new File(repository.getDirectory(), "openengsb");
+        indexFile = new File(directory, INDEX_FILE);
+        tipsFile = new File(directory, TIPS_FILE);
+        load();
+    }
+
+    /**
+     * Indexes all commits reachable from HEAD that are not indexed yet.
+     */
+    public synchronized void update() throws IOException {
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null || tips.contains(head)) {
+            return;
+        }
+        RevWalk walk = new RevWalk(repository);
+        TreeWalk treeWalk = new TreeWalk(repository);
+        DataOutputStream out = null;
+        try {
+            walk.setRetainBody(false);
+            if (!containsTips(walk, head)) {
+                LOGGER.info("HEAD {} does not contain the indexed history anymore, rebuilding changed-paths index",
+                    head.name());
+                clear();
+            }
+            walk.reset();
+            walk.markStart(walk.parseCommit(head));
+            for (ObjectId tip : tips) {
+                walk.markUninteresting(walk.parseCommit(tip));
+            }
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            indexFile.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+            int added = 0;
+            for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+                if (positions.containsKey(commit)) {
+                    continue;
+                }
+                treeWalk.reset();
+                if (commit.getParentCount() == 0) {
+                    treeWalk.addTree(new EmptyTreeIterator());
+                } else {
+                    treeWalk.addTree(walk.parseCommit(commit.getParent(0)).getTree());
+                }
+                treeWalk.addTree(commit.getTree());
+                List<String> paths = new ArrayList<String>();
+                while (treeWalk.next()) {
+                    paths.add(treeWalk.getPathString());
+                }
+                ObjectId id = commit.copy();
+                write(out, id, commit.getCommitTime(), paths);
+                add(id, commit.getCommitTime(), paths);
+                added++;
+            }
+            out.close();
+            out = null;
+            tips.clear();
+            tips.add(head.copy());
+            writeTips();
+            LOGGER.debug("Indexed changed paths of {} commits", added);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            treeWalk.release();
+            walk.release();
+        }
+    }
+
+    private boolean containsTips(RevWalk walk, ObjectId head) throws IOException {
+        RevCommit headCommit = walk.parseCommit(head);
+        for (ObjectId tip : tips) {
+            try {
+                if (!walk.isMergedInto(walk.parseCommit(tip), headCommit)) {
+                    return false;
+                }
+            } catch (MissingObjectException e) {
+                LOGGER.debug("Indexed tip {} no longer exists", tip.name());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clear() throws IOException {
+        commits.clear();
+        commitTimes.clear();
+        positions.clear();
+        pathToCommits.clear();
+        tips.clear();
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Cannot delete " + indexFile);
+        }
+        tipsFile.delete();
+    }
+
+    /**
+     * Returns the ids of all indexed commits that changed {@code path} or, if {@code path} is a directory, any path
+     * below it, newest first.
+     */
+    public synchronized List<ObjectId> getCommits(String path) {
+        Set<Integer> matches = new HashSet<Integer>();
+        if (path.length() == 0) {
+            for (int i = 0; i < commits.size(); i++) {
+                matches.add(i);
+            }
+        } else {
+            List<Integer> exact = pathToCommits.get(path);
+            if (exact != null) {
+                matches.addAll(exact);
+            }
+            SortedMap<String, List<Integer>> below = pathToCommits.subMap(path + "/", path + "0");
+            for (List<Integer> positionList : below.values()) {
+                matches.addAll(positionList);
+            }
+        }
+        List<Integer> sorted = new ArrayList<Integer>(matches);
+        Collections.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int timeA = commitTimes.get(a);
+                int timeB = commitTimes.get(b);
+                return timeA == timeB ? b.compareTo(a) : (timeA < timeB ? 1 : -1);
+            }
+        });
+        List<ObjectId> result = new ArrayList<ObjectId>(sorted.size());
+        for (Integer position : sorted) {
+            result.add(commits.get(position));
+        }
+        return result;
+    }
+
+    public synchronized boolean isIndexed(AnyObjectId commit) {
+        return positions.containsKey(commit.copy());
+    }
+
+    public synchronized boolean isEmpty() {
+        return tips.isEmpty();
+    }
+
+    public synchronized Collection<ObjectId> getTips() {
+        return new ArrayList<ObjectId>(tips);
+    }
+
+    private void add(ObjectId id, int commitTime, List<String> paths) {
+        int position = commits.size();
+        commits.add(id);
+        commitTimes.add(commitTime);
+        positions.put(id, position);
+        for (String path : paths) {
+            List<Integer> positionList = pathToCommits.get(path);
+            if (positionList == null) {
+                positionList = new ArrayList<Integer>(2);
+                pathToCommits.put(path, positionList);
+            }
+            positionList.add(position);
+        }
+    }
+
+    private static void write(DataOutputStream out, ObjectId id, int commitTime, List<String> paths)
+        throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(buffer);
+        id.copyRawTo(record);
+        record.writeInt(commitTime);
+        record.writeInt(paths.size());
+        for (String path : paths) {
+            record.writeUTF(path);
+        }
+        record.flush();
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Reads the index log. A record cut off by a crash while appending is dropped and truncated from the file, so
+     * that later records are appended after the last complete one.
+     */
+    private void load() throws IOException {
+        if (indexFile.isFile()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            long valid = 0;
+            try {
+                while (true) {
+                    int length = in.readInt();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    record.readFully(raw);
+                    int commitTime = record.readInt();
+                    int count = record.readInt();
+                    List<String> paths = new ArrayList<String>(count);
+                    for (int i = 0; i < count; i++) {
+                        paths.add(record.readUTF());
+                    }
+                    add(ObjectId.fromRaw(raw), commitTime, paths);
+                    valid += 4 + length;
+                }
+            } catch (EOFException e) {
+                LOGGER.debug("Loaded changed paths of {} commits", commits.size());
+            } finally {
+                in.close();
+            }
+            if (valid < indexFile.length()) {
+                LOGGER.warn("Dropping incomplete record at the end of {}", indexFile);
+                RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+                try {
+                    file.setLength(valid);
+                } finally {
+                    file.close();
+                }
+            }
+        }
+        if (tipsFile.isFile()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tipsFile)));
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            try {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    in.readFully(raw);
+                    tips.add(ObjectId.fromRaw(raw));
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private void writeTips() throws IOException {
+        File tmp = new File(tipsFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(tips.size());
+            for (ObjectId tip : tips) {
+                tip.copyRawTo(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(tipsFile)) {
+            tipsFile.delete();
+            if (!tmp.renameTo(tipsFile)) {
+                throw new IOException("Cannot write " + tipsFile);
+            }
+        }
+    }
+}
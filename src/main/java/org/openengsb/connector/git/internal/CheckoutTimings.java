@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+/**
+ * Durations of the phases of a {@link ParallelCheckout} in milliseconds, and the amount of work done.
+ */
+public class CheckoutTimings {
+    private final long scanTime;
+    private final long writeTime;
+    private final long indexTime;
+    private final int files;
+    private final long bytes;
+    private final int threads;
+
+    public CheckoutTimings(long scanTime, long writeTime, long indexTime, int files, long bytes, int threads) {
+        this.scanTime = scanTime;
+        this.writeTime = writeTime;
+        this.indexTime = indexTime;
+        this.files = files;
+        this.bytes = bytes;
+        this.threads = threads;
+    }
+
+    /**
+     * Time spent walking the tree to collect the entries.
+     */
+    public long getScanTime() {
+        return scanTime;
+    }
+
+    /**
+     * Time spent inflating and writing the files.
+     */
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    /**
+     * Time spent writing the index.
+     */
+    public long getIndexTime() {
+        return indexTime;
+    }
+
+    public long getTotalTime() {
+        return scanTime + writeTime + indexTime;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d bytes with %d threads: scan %d ms, write %d ms, index %d ms", files,
+            bytes, threads, scanTime, writeTime, indexTime);
+    }
+}
@@ -0,0 +1,416 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact graph of all commits reachable from the refs of a repository, answering ancestry queries without parsing
+ * commit objects.
+ * <p>
+ * Commits are numbered in the order they were added, parents always before their children. Commit times,
+ * generation numbers (one more than the highest generation of the parents) and the parent lists are held in
+ * primitive arrays, the parent lists of all commits in one array indexed by per-commit offsets. The graph is
+ * persisted to {@code .git/openengsb/commit-graph} and extended by the commits reachable from new ref tips only.
+ */
+public class CommitGraph {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommitGraph.class);
+    private static final String GRAPH_FILE = "commit-graph";
+    private static final int MAGIC = 0x4f434731;
+    private static final int HEADER_SIZE = 12;
+    private static final int COMMIT_SIZE = Constants.OBJECT_ID_LENGTH + 12;
+
+    private final Repository repository;
+    private final File graphFile;
+
+    private ObjectIdSubclassMap<Node> nodes = new ObjectIdSubclassMap<Node>();
+    private ObjectId[] ids = new ObjectId[1024];
+    private int[] commitTimes = new int[1024];
+    private int[] generations = new int[1024];
+    private int[] parentOffsets = new int[1025];
+    private int[] parents = new int[1024];
+    private int size;
+    private Set<ObjectId> tips = new LinkedHashSet<ObjectId>();
+
+    public CommitGraph(Repository repository) throws IOException {
+        this.repository = repository;
+        graphFile = new File(new File(repository.getDirectory(), "openengsb"), GRAPH_FILE);
+        load();
+    }
+
+    /**
+     * Adds the commits reachable from the current refs that are not in the graph yet.
+     */
+    public synchronized void update() throws IOException {
+        Set<ObjectId> newTips = readTips();
+        if (newTips.equals(tips)) {
+            return;
+        }
+        RevWalk walk = new RevWalk(repository);
+        try {
+            walk.setRetainBody(false);
+            walk.sort(RevSort.TOPO);
+            walk.sort(RevSort.REVERSE, true);
+            for (ObjectId tip : newTips) {
+                walk.markStart(walk.parseCommit(tip));
+            }
+            for (ObjectId tip : tips) {
+                if (nodes.get(tip) != null && repository.hasObject(tip)) {
+                    walk.markUninteresting(walk.parseCommit(tip));
+                }
+            }
+            int added = 0;
+            for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+                if (nodes.get(commit) == null) {
+                    add(commit);
+                    added++;
+                }
+            }
+            tips = newTips;
+            save();
+            LOGGER.debug("Added {} commits to commit graph of {} commits", added, size);
+        } finally {
+            walk.release();
+        }
+    }
+
+    public synchronized boolean contains(AnyObjectId commit) {
+        return nodes.get(commit) != null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getCommitTime(AnyObjectId commit) {
+        return commitTimes[indexOf(commit)];
+    }
+
+    public synchronized int getGeneration(AnyObjectId commit) {
+        return generations[indexOf(commit)];
+    }
+
+    /**
+     * Returns whether {@code ancestor} is reachable from {@code commit}; every commit is its own ancestor.
+     */
+    public synchronized boolean isAncestor(AnyObjectId ancestor, AnyObjectId commit) {
+        int target = indexOf(ancestor);
+        int start = indexOf(commit);
+        if (target == start) {
+            return true;
+        }
+        int targetGeneration = generations[target];
+        if (generations[start] <= targetGeneration) {
+            return false;
+        }
+        BitSet seen = new BitSet(size);
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = start;
+        seen.set(start);
+        while (top > 0) {
+            int current = stack[--top];
+            for (int p = parentOffsets[current]; p < parentOffsets[current + 1]; p++) {
+                int parent = parents[p];
+                if (parent == target) {
+                    return true;
+                }
+                // ancestors of a commit never have a higher generation than the commit itself
+                if (seen.get(parent) || generations[parent] <= targetGeneration) {
+                    continue;
+                }
+                seen.set(parent);
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = parent;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a best common ancestor of two commits, or {@code null} if their histories are unrelated. Of all common
+     * ancestors the one with the highest generation is returned, which cannot be an ancestor of another common
+     * ancestor.
+     */
+    public synchronized ObjectId mergeBase(AnyObjectId a, AnyObjectId b) {
+        BitSet ancestorsOfA = reachable(indexOf(a), null);
+        int start = indexOf(b);
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(16, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                int gx = generations[x];
+                int gy = generations[y];
+                return gx == gy ? 0 : (gx > gy ? -1 : 1);
+            }
+        });
+        BitSet seen = new BitSet(size);
+        queue.add(start);
+        seen.set(start);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            if (ancestorsOfA.get(current)) {
+                return ids[current];
+            }
+            for (int p = parentOffsets[current]; p < parentOffsets[current + 1]; p++) {
+                int parent = parents[p];
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the commits reachable from {@code to} but not from {@code from}.
+     *
+     * @param from the excluded commit, or {@code null} to count all ancestors of {@code to}
+     */
+    public synchronized int countRange(AnyObjectId from, AnyObjectId to) {
+        BitSet excluded = from == null ? new BitSet(0) : reachable(indexOf(from), null);
+        return reachable(indexOf(to), excluded).cardinality();
+    }
+
+    /**
+     * Marks every commit reachable from {@code start}, not descending into commits in {@code stop}.
+     */
+    private BitSet reachable(int start, BitSet stop) {
+        BitSet seen = new BitSet(size);
+        if (stop != null && stop.get(start)) {
+            return seen;
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = start;
+        seen.set(start);
+        while (top > 0) {
+            int current = stack[--top];
+            for (int p = parentOffsets[current]; p < parentOffsets[current + 1]; p++) {
+                int parent = parents[p];
+                if (seen.get(parent) || stop != null && stop.get(parent)) {
+                    continue;
+                }
+                seen.set(parent);
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = parent;
+            }
+        }
+        return seen;
+    }
+
+    private int indexOf(AnyObjectId commit) {
+        Node node = nodes.get(commit);
+        if (node == null) {
+            throw new IllegalArgumentException("Commit " + commit.name() + " is not in the commit graph");
+        }
+        return node.index;
+    }
+
+    private Set<ObjectId> readTips() throws IOException {
+        Set<ObjectId> result = new LinkedHashSet<ObjectId>();
+        RevWalk walk = new RevWalk(repository);
+        try {
+            for (Ref ref : repository.getAllRefs().values()) {
+                if (ref.getObjectId() == null) {
+                    continue;
+                }
+                try {
+                    RevCommit commit = walk.parseCommit(ref.getObjectId());
+                    result.add(commit.copy());
+                } catch (IncorrectObjectTypeException e) {
+                    LOGGER.trace("Ref {} does not point to a commit", ref.getName());
+                } catch (MissingObjectException e) {
+                    LOGGER.debug("Ref {} points to missing object", ref.getName());
+                }
+            }
+        } finally {
+            walk.release();
+        }
+        return result;
+    }
+
+    private void add(RevCommit commit) {
+        ensureCapacity(size + 1, parentOffsets[size] + commit.getParentCount());
+        int index = size;
+        int generation = 1;
+        int offset = parentOffsets[index];
+        for (RevCommit parent : commit.getParents()) {
+            Node parentNode = nodes.get(parent);
+            if (parentNode == null) {
+                // parent missing in a shallow or incomplete repository, treated as root
+                continue;
+            }
+            parents[offset++] = parentNode.index;
+            generation = Math.max(generation, generations[parentNode.index] + 1);
+        }
+        ObjectId id = commit.copy();
+        ids[index] = id;
+        commitTimes[index] = commit.getCommitTime();
+        generations[index] = generation;
+        parentOffsets[index + 1] = offset;
+        nodes.add(new Node(id, index));
+        size++;
+    }
+
+    private void ensureCapacity(int commits, int parentCount) {
+        if (commits > ids.length) {
+            int capacity = Math.max(commits, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            commitTimes = Arrays.copyOf(commitTimes, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            parentOffsets = Arrays.copyOf(parentOffsets, capacity + 1);
+        }
+        if (parentCount > parents.length) {
+            parents = Arrays.copyOf(parents, Math.max(parentCount, parents.length * 2));
+        }
+    }
+
+    private void save() throws IOException {
+        graphFile.getParentFile().mkdirs();
+        File tmp = new File(graphFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(size);
+            out.writeInt(parentOffsets[size]);
+            for (int i = 0; i < size; i++) {
+                ids[i].copyRawTo(out);
+                out.writeInt(commitTimes[i]);
+                out.writeInt(generations[i]);
+                out.writeInt(parentOffsets[i + 1]);
+            }
+            for (int p = 0; p < parentOffsets[size]; p++) {
+                out.writeInt(parents[p]);
+            }
+            out.writeInt(tips.size());
+            for (ObjectId tip : tips) {
+                tip.copyRawTo(out);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(graphFile)) {
+            graphFile.delete();
+            if (!tmp.renameTo(graphFile)) {
+                throw new IOException("Cannot write " + graphFile);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!graphFile.isFile()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(graphFile)));
+        try {
+            if (in.readInt() != MAGIC) {
+                LOGGER.warn("Ignoring commit graph {} of unknown format", graphFile);
+                return;
+            }
+            int count = in.readInt();
+            int parentCount = in.readInt();
+            // a damaged header must not make us allocate huge arrays
+            long length = graphFile.length();
+            if (count < 0 || parentCount < 0
+                    || HEADER_SIZE + (long) COMMIT_SIZE * count + 4L * parentCount + 4 > length) {
+                throw new IOException("Commit and parent counts do not match the file length");
+            }
+            ensureCapacity(count, parentCount);
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(raw);
+                ids[i] = ObjectId.fromRaw(raw);
+                commitTimes[i] = in.readInt();
+                generations[i] = in.readInt();
+                parentOffsets[i + 1] = in.readInt();
+                if (parentOffsets[i + 1] < parentOffsets[i] || parentOffsets[i + 1] > parentCount) {
+                    throw new IOException("Invalid parent offset of commit " + i);
+                }
+                nodes.add(new Node(ids[i], i));
+            }
+            if (parentOffsets[count] != parentCount) {
+                throw new IOException("Parent offsets do not match the parent count");
+            }
+            for (int p = 0; p < parentCount; p++) {
+                parents[p] = in.readInt();
+                if (parents[p] < 0 || parents[p] >= count) {
+                    throw new IOException("Invalid parent index " + parents[p]);
+                }
+            }
+            int tipCount = in.readInt();
+            if (tipCount < 0 || HEADER_SIZE + (long) COMMIT_SIZE * count + 4L * parentCount + 4
+                    + (long) Constants.OBJECT_ID_LENGTH * tipCount != length) {
+                throw new IOException("Tip count does not match the file length");
+            }
+            for (int i = 0; i < tipCount; i++) {
+                in.readFully(raw);
+                tips.add(ObjectId.fromRaw(raw));
+            }
+            size = count;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring damaged commit graph {}: {}", graphFile, e.getMessage());
+            nodes = new ObjectIdSubclassMap<Node>();
+            tips.clear();
+            size = 0;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Node extends ObjectId {
+        private final int index;
+
+        private Node(AnyObjectId id, int index) {
+            super(id);
+            this.index = index;
+        }
+    }
+}
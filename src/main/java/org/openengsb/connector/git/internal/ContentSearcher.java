@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.openengsb.connector.git.domain.SearchMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Searches the blobs of a tree for a regular expression in parallel, reading them directly from the object database.
+ * <p>
+ * Every distinct blob is read only once, no matter how many paths refer to it. Binary blobs and blobs larger than
+ * {@code maxBlobSize} are skipped. The blobs are split into small batches picked up by the worker threads, so that a
+ * few large files do not hold up the others.
+ */
+public class ContentSearcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentSearcher.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BATCH_SIZE = 64;
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+    private final Repository repository;
+    private final ExecutorService executor;
+    private final long maxBlobSize;
+
+    public ContentSearcher(Repository repository, int threads, long maxBlobSize) {
+        this.repository = repository;
+        this.maxBlobSize = maxBlobSize;
+        // searches are rare, so the workers do not outlive an idle minute
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "git-search-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * Searches every file of {@code tree} and passes the matches to {@code handler}.
+     *
+     * @return the number of matches found
+     */
+    public int search(AnyObjectId tree, Pattern pattern, SearchMatchHandler handler) throws IOException {
+        Map<ObjectId, List<String>> blobs = collectBlobs(tree);
+        LOGGER.debug("Searching {} distinct blobs for '{}'", blobs.size(), pattern.pattern());
+        SynchronizedHandler synchronizedHandler = new SynchronizedHandler(handler);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        List<Map.Entry<ObjectId, List<String>>> batch = new ArrayList<Map.Entry<ObjectId, List<String>>>();
+        try {
+            for (Map.Entry<ObjectId, List<String>> blob : blobs.entrySet()) {
+                batch.add(blob);
+                if (batch.size() == BATCH_SIZE) {
+                    futures.add(executor.submit(new SearchTask(batch, pattern, synchronizedHandler)));
+                    batch = new ArrayList<Map.Entry<ObjectId, List<String>>>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                futures.add(executor.submit(new SearchTask(batch, pattern, synchronizedHandler)));
+            }
+        } catch (RejectedExecutionException e) {
+            cancel(futures);
+            throw new IOException("Searcher was shut down");
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new IOException("Search interrupted");
+        } catch (ExecutionException e) {
+            cancel(futures);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage());
+        }
+        return synchronizedHandler.count;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static void cancel(List<Future<Void>> futures) {
+        for (Future<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private Map<ObjectId, List<String>> collectBlobs(AnyObjectId tree) throws IOException {
+        Map<ObjectId, List<String>> blobs = new LinkedHashMap<ObjectId, List<String>>();
+        TreeWalk walk = new TreeWalk(repository);
+        try {
+            walk.addTree(tree);
+            walk.setRecursive(true);
+            while (walk.next()) {
+                FileMode mode = walk.getFileMode(0);
+                if (mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE) {
+                    continue;
+                }
+                ObjectId id = walk.getObjectId(0);
+                List<String> paths = blobs.get(id);
+                if (paths == null) {
+                    paths = new ArrayList<String>(1);
+                    blobs.put(id, paths);
+                }
+                paths.add(walk.getPathString());
+            }
+        } finally {
+            walk.release();
+        }
+        return blobs;
+    }
+
+    private final class SearchTask implements Callable<Void> {
+        private final List<Map.Entry<ObjectId, List<String>>> blobs;
+        private final Pattern pattern;
+        private final SearchMatchHandler handler;
+
+        private SearchTask(List<Map.Entry<ObjectId, List<String>>> blobs, Pattern pattern,
+                SearchMatchHandler handler) {
+            this.blobs = blobs;
+            this.pattern = pattern;
+            this.handler = handler;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            ObjectReader reader = repository.newObjectReader();
+            try {
+                for (Map.Entry<ObjectId, List<String>> blob : blobs) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return null;
+                    }
+                    if (reader.getObjectSize(blob.getKey(), Constants.OBJ_BLOB) > maxBlobSize) {
+                        continue;
+                    }
+                    byte[] content = reader.open(blob.getKey(), Constants.OBJ_BLOB).getCachedBytes();
+                    if (RawText.isBinary(content)) {
+                        continue;
+                    }
+                    searchContent(new String(content, UTF_8), blob.getValue());
+                }
+            } finally {
+                reader.release();
+            }
+            return null;
+        }
+
+        private void searchContent(String content, List<String> paths) {
+            Matcher matcher = pattern.matcher("");
+            int lineNumber = 0;
+            int start = 0;
+            while (start < content.length()) {
+                int end = content.indexOf('\n', start);
+                if (end < 0) {
+                    end = content.length();
+                }
+                lineNumber++;
+                String line = content.substring(start, end > start && content.charAt(end - 1) == '\r' ? end - 1 : end);
+                matcher.reset(line);
+                while (matcher.find()) {
+                    for (String path : paths) {
+                        handler.handleMatch(new SearchMatch(path, lineNumber, matcher.start(), line));
+                    }
+                }
+                start = end + 1;
+            }
+        }
+    }
+
+    private static final class SynchronizedHandler implements SearchMatchHandler {
+        private final SearchMatchHandler delegate;
+        private int count;
+
+        private SynchronizedHandler(SearchMatchHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void handleMatch(SearchMatch match) {
+            count++;
+            delegate.handleMatch(match);
+        }
+    }
+}
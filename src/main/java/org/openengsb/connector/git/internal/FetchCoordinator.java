@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.transport.URIish;
+import org.openengsb.domain.scm.CommitRef;
+import org.openengsb.domain.scm.ScmException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link GitServiceImpl#update()} for many connector instances in parallel. At most
+ * {@code maxConcurrentFetches} updates run at the same time, and at most {@code maxFetchesPerHost} of them talk to
+ * the same remote host. Remotes on the file system are limited per repository path instead, since unrelated local
+ * repositories do not compete for a server. Updates waiting for their host do not occupy a worker thread.
+ */
+public class FetchCoordinator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetchCoordinator.class);
+    private static final String LOCAL_HOST = "local";
+
+    private final ExecutorService executor;
+    private final int maxFetchesPerHost;
+    private final Map<String, Integer> running = new HashMap<String, Integer>();
+    private final Map<String, Queue<UpdateTask>> pending = new HashMap<String, Queue<UpdateTask>>();
+    private boolean shutdown;
+
+    public FetchCoordinator(int maxConcurrentFetches, int maxFetchesPerHost) {
+        if (maxConcurrentFetches < 1 || maxFetchesPerHost < 1) {
+            throw new IllegalArgumentException("Fetch limits have to be positive");
+        }
+        this.maxFetchesPerHost = maxFetchesPerHost;
+        executor = Executors.newFixedThreadPool(maxConcurrentFetches, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "git-fetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Schedules an update of every service and returns the results in the order the updates complete. Iterating
+     * blocks until the next update has finished; failed updates are reported as results carrying the error, and so
+     * are updates dropped because the coordinator was shut down. The results can only be iterated once.
+     */
+    public Iterable<UpdateResult> updateAll(Collection<GitServiceImpl> services) {
+        final int size = services.size();
+        final BlockingQueue<UpdateResult> results = new LinkedBlockingQueue<UpdateResult>();
+        for (GitServiceImpl service : services) {
+            submit(hostOf(service), new UpdateTask(service, results));
+        }
+        return new Iterable<UpdateResult>() {
+            private final AtomicBoolean iterated = new AtomicBoolean();
+
+            @Override
+            public Iterator<UpdateResult> iterator() {
+                if (iterated.getAndSet(true)) {
+                    throw new IllegalStateException("The update results can only be iterated once");
+                }
+                return new ResultIterator(results, size);
+            }
+        };
+    }
+
+    /**
+     * Stops all running updates. Updates that did not start yet are reported as failed.
+     */
+    public void shutdown() {
+        List<UpdateTask> dropped = new LinkedList<UpdateTask>();
+        synchronized (this) {
+            shutdown = true;
+            for (Queue<UpdateTask> queue : pending.values()) {
+                dropped.addAll(queue);
+            }
+            pending.clear();
+        }
+        for (Runnable slot : executor.shutdownNow()) {
+            dropped.add(((HostSlot) slot).task);
+        }
+        for (UpdateTask task : dropped) {
+            task.drop();
+        }
+    }
+
+    private static UpdateResult runUpdate(GitServiceImpl service) {
+        long start = System.currentTimeMillis();
+        try {
+            List<CommitRef> commits = service.update();
+            return new UpdateResult(service, commits, null, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Update of connector {} failed", service.getInstanceId(), e);
+            return new UpdateResult(service, null, e, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void submit(String host, UpdateTask task) {
+        synchronized (this) {
+            if (shutdown) {
+                task.drop();
+                return;
+            }
+            Integer active = running.get(host);
+            if (active != null && active >= maxFetchesPerHost) {
+                LOGGER.debug("Fetch limit for host {} reached, queueing update", host);
+                Queue<UpdateTask> queue = pending.get(host);
+                if (queue == null) {
+                    queue = new LinkedList<UpdateTask>();
+                    pending.put(host, queue);
+                }
+                queue.add(task);
+                return;
+            }
+            running.put(host, active == null ? 1 : active + 1);
+        }
+        execute(host, task);
+    }
+
+    private void execute(String host, UpdateTask task) {
+        try {
+            executor.execute(new HostSlot(host, task));
+        } catch (RejectedExecutionException e) {
+            task.drop();
+        }
+    }
+
+    /**
+     * Hands the host slot of a finished task to the next queued task of the same host, or frees it.
+     */
+    private void release(String host) {
+        UpdateTask next = null;
+        synchronized (this) {
+            Queue<UpdateTask> queue = pending.get(host);
+            if (queue != null) {
+                next = queue.poll();
+                if (queue.isEmpty()) {
+                    pending.remove(host);
+                }
+            }
+            if (next == null) {
+                int active = running.get(host) - 1;
+                if (active == 0) {
+                    running.remove(host);
+                } else {
+                    running.put(host, active);
+                }
+            }
+        }
+        if (next != null) {
+            execute(host, next);
+        }
+    }
+
+    static String hostOf(GitServiceImpl service) {
+        String location = service.getRemoteLocation();
+        if (location == null) {
+            return LOCAL_HOST;
+        }
+        try {
+            URIish uri = new URIish(location);
+            if (uri.getHost() == null) {
+                return LOCAL_HOST + ":" + uri.getPath();
+            }
+            return uri.getHost().toLowerCase();
+        } catch (URISyntaxException e) {
+            return location;
+        }
+    }
+
+    /**
+     * Updates one service and queues its result. Exactly one result is queued per task, since the result iterator
+     * waits for one per service.
+     */
+    private static final class UpdateTask implements Runnable {
+        private final GitServiceImpl service;
+        private final BlockingQueue<UpdateResult> results;
+
+        private UpdateTask(GitServiceImpl service, BlockingQueue<UpdateResult> results) {
+            this.service = service;
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            try {
+                results.add(runUpdate(service));
+            } catch (Error e) {
+                results.add(new UpdateResult(service, null, new ScmException(e), 0));
+                throw e;
+            }
+        }
+
+        private void drop() {
+            LOGGER.debug("Update of connector {} was dropped", service.getInstanceId());
+            results.add(new UpdateResult(service, null, new ScmException("Update of connector "
+                    + service.getInstanceId() + " was dropped, the fetch coordinator is shut down"), 0));
+        }
+    }
+
+    /**
+     * Runs a task holding a slot of its host, which is handed on when the task is done.
+     */
+    private final class HostSlot implements Runnable {
+        private final String host;
+        private final UpdateTask task;
+
+        private HostSlot(String host, UpdateTask task) {
+            this.host = host;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                release(host);
+            }
+        }
+    }
+
+    private static final class ResultIterator implements Iterator<UpdateResult> {
+        private final BlockingQueue<UpdateResult> results;
+        private int remaining;
+
+        private ResultIterator(BlockingQueue<UpdateResult> results, int remaining) {
+            this.results = results;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public UpdateResult next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                UpdateResult result = results.take();
+                remaining--;
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScmException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.FileFilter;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the progress of a fetch and optionally limits its bandwidth.
+ * <p>
+ * Object counts and the resolving-deltas progress are taken from the task updates of JGit. JGit does not report
+ * bytes, so the received bytes are measured from the size of the temporary {@code incoming_*.pack} the pack parser
+ * writes directly into the objects directory. When a bandwidth limit is set, the receiving thread is put to sleep in
+ * {@link #update(int)} whenever the transfer gets ahead of the limit, which throttles the stream at the socket.
+ */
+public class FetchProgressMonitor implements ProgressMonitor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetchProgressMonitor.class);
+    private static final long MEASURE_INTERVAL = 100;
+    private static final String RECEIVING_TASK = "Receiving objects";
+    private static final String RESOLVING_TASK = "Resolving deltas";
+
+    private final File objectsDirectory;
+    private final long bandwidthLimit;
+    private final long started = System.currentTimeMillis();
+
+    private volatile String task;
+    private volatile int taskTotal;
+    private volatile int taskCompleted;
+    private volatile int objectsTotal;
+    private volatile int objectsReceived;
+    private volatile int deltasTotal;
+    private volatile int deltasResolved;
+    private volatile long bytesReceived;
+    private volatile long receivingStarted;
+    private volatile boolean finished;
+    private long lastMeasure;
+
+    /**
+     * @param bandwidthLimit maximum number of bytes to receive per second, or {@code 0} for no limit
+     */
+    public FetchProgressMonitor(File objectsDirectory, long bandwidthLimit) {
+        this.objectsDirectory = objectsDirectory;
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
+    @Override
+    public void start(int totalTasks) {
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        LOGGER.debug("Fetch task '{}' started with {} units", title, totalWork);
+        task = title;
+        taskTotal = totalWork;
+        taskCompleted = 0;
+        if (RECEIVING_TASK.equals(title)) {
+            objectsTotal = totalWork;
+            receivingStarted = System.currentTimeMillis();
+        } else if (RESOLVING_TASK.equals(title)) {
+            deltasTotal = totalWork;
+        }
+    }
+
+    @Override
+    public void update(int completed) {
+        taskCompleted += completed;
+        if (RECEIVING_TASK.equals(task)) {
+            objectsReceived += completed;
+            long now = System.currentTimeMillis();
+            if (now - lastMeasure >= MEASURE_INTERVAL) {
+                lastMeasure = now;
+                bytesReceived = measureIncomingPack();
+                throttle(now);
+            }
+        } else if (RESOLVING_TASK.equals(task)) {
+            deltasResolved += completed;
+        }
+    }
+
+    @Override
+    public void endTask() {
+        if (RECEIVING_TASK.equals(task)) {
+            long bytes = measureIncomingPack();
+            if (bytes > 0) {
+                bytesReceived = bytes;
+            }
+        }
+    }
+
+    /**
+     * Aborts the fetch if the fetching thread was interrupted, e.g. by cancelling an asynchronous update.
+     */
+    @Override
+    public boolean isCancelled() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    private void throttle(long now) {
+        if (bandwidthLimit <= 0) {
+            return;
+        }
+        long expected = bytesReceived * 1000 / bandwidthLimit;
+        long elapsed = now - receivingStarted;
+        if (expected > elapsed) {
+            try {
+                Thread.sleep(expected - elapsed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long measureIncomingPack() {
+        File[] incoming = objectsDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().startsWith("incoming_") && file.getName().endsWith(".pack");
+            }
+        });
+        long size = 0;
+        if (incoming != null) {
+            for (File file : incoming) {
+                size += file.length();
+            }
+        }
+        return Math.max(size, bytesReceived);
+    }
+
+    public String getTask() {
+        return task;
+    }
+
+    /**
+     * Percentage of the current task, or {@code -1} if its amount of work is unknown.
+     */
+    public int getTaskPercent() {
+        int total = taskTotal;
+        return total <= 0 ? -1 : (int) Math.min(100, 100L * taskCompleted / total);
+    }
+
+    public int getObjectsTotal() {
+        return objectsTotal;
+    }
+
+    public int getObjectsReceived() {
+        return objectsReceived;
+    }
+
+    public int getDeltasTotal() {
+        return deltasTotal;
+    }
+
+    public int getDeltasResolved() {
+        return deltasResolved;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Average receive rate in bytes per second.
+     */
+    public long getBytesPerSecond() {
+        long since = receivingStarted;
+        long elapsed = System.currentTimeMillis() - (since == 0 ? started : since);
+        return elapsed <= 0 ? 0 : bytesReceived * 1000 / elapsed;
+    }
+
+    /**
+     * Estimated milliseconds until all objects are received, extrapolated from the objects received so far, or
+     * {@code -1} if no estimate is possible yet.
+     */
+    public long getEstimatedRemainingTime() {
+        int received = objectsReceived;
+        int total = objectsTotal;
+        long since = receivingStarted;
+        if (finished || received == 0 || total <= 0 || since == 0) {
+            return finished ? 0 : -1;
+        }
+        long elapsed = System.currentTimeMillis() - since;
+        return elapsed * Math.max(0, total - received) / received;
+    }
+
+    public long getElapsedTime() {
+        return System.currentTimeMillis() - started;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+}
@@ -36,6 +36,44 @@ public class GitConnectorProvider extends AbstractConnectorProvider {
                 .description("service.branch.description").build());
         builder.attribute(builder.newAttribute().id("submodulesHack").name("service.submodulesHack.name")
             .description("service.submodulesHack.description").asBoolean().build());
+        builder.attribute(builder.newAttribute().id("branches").name("service.branches.name")
+            .description("service.branches.description").build());
+        builder.attribute(builder.newAttribute().id("blobStore").name("service.blobStore.name")
+            .description("service.blobStore.description").asBoolean().build());
+        builder.attribute(builder.newAttribute().id("checkoutThreads").name("service.checkoutThreads.name")
+            .description("service.checkoutThreads.description").build());
+        builder.attribute(builder.newAttribute().id("sparseInclude").name("service.sparseInclude.name")
+            .description("service.sparseInclude.description").build());
+        builder.attribute(builder.newAttribute().id("sparseExclude").name("service.sparseExclude.name")
+            .description("service.sparseExclude.description").build());
+        builder.attribute(builder.newAttribute().id("fetchBandwidthLimit").name("service.fetchBandwidthLimit.name")
+            .description("service.fetchBandwidthLimit.description").build());
+        builder.attribute(builder.newAttribute().id("push").name("service.push.name")
+            .description("service.push.description").asBoolean().build());
+        builder.attribute(builder.newAttribute().id("pushWindow").name("service.pushWindow.name")
+            .description("service.pushWindow.description").build());
+        builder.attribute(builder.newAttribute().id("warmup").name("service.warmup.name")
+            .description("service.warmup.description").asBoolean().build());
+        builder.attribute(builder.newAttribute().id("asyncThreads").name("service.asyncThreads.name")
+            .description("service.asyncThreads.description").build());
+        builder.attribute(builder.newAttribute().id("blobCacheBudget").name("service.blobCacheBudget.name")
+            .description("service.blobCacheBudget.description").build());
+        builder.attribute(builder.newAttribute().id("blobCacheThreshold").name("service.blobCacheThreshold.name")
+            .description("service.blobCacheThreshold.description").build());
+        builder.attribute(builder.newAttribute().id("scratchBudget").name("service.scratchBudget.name")
+            .description("service.scratchBudget.description").build());
+        builder.attribute(builder.newAttribute().id("scratchMaxAge").name("service.scratchMaxAge.name")
+            .description("service.scratchMaxAge.description").build());
+        builder.attribute(builder.newAttribute().id("scratchGracePeriod").name("service.scratchGracePeriod.name")
+            .description("service.scratchGracePeriod.description").build());
+        builder.attribute(builder.newAttribute().id("packedGitLimit").name("service.packedGitLimit.name")
+            .description("service.packedGitLimit.description").build());
+        builder.attribute(builder.newAttribute().id("packedGitWindowSize").name("service.packedGitWindowSize.name")
+            .description("service.packedGitWindowSize.description").build());
+        builder.attribute(builder.newAttribute().id("deltaBaseCacheLimit").name("service.deltaBaseCacheLimit.name")
+            .description("service.deltaBaseCacheLimit.description").build());
+        builder.attribute(builder.newAttribute().id("packedGitMMAP").name("service.packedGitMMAP.name")
+            .description("service.packedGitMMAP.description").asBoolean().build());
         return builder.build();
     }
 }
@@ -18,18 +18,40 @@
 package org.openengsb.connector.git.internal;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.RmCommand;
 import org.eclipse.jgit.api.TagCommand;
 import org.eclipse.jgit.dircache.DirCache;
@@ -37,7 +59,9 @@ import org.eclipse.jgit.dircache.DirCacheCheckout;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -45,12 +69,18 @@ import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepository;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.FetchConnection;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.openengsb.connector.git.domain.GitCommitRef;
 import org.openengsb.connector.git.domain.GitTagRef;
+import org.openengsb.connector.git.domain.TreeListing;
 import org.openengsb.core.api.AliveState;
 import org.openengsb.core.api.model.OpenEngSBFileModel;
 import org.openengsb.core.common.AbstractOpenEngSBConnectorService;
@@ -63,12 +93,61 @@ import org.slf4j.LoggerFactory;
 
 public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements ScmDomain {
     private static final Logger LOGGER = LoggerFactory.getLogger(GitServiceImpl.class);
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final long MAX_SEARCH_BLOB_SIZE = 1024 * 1024;
+    private static final long DEFAULT_SCRATCH_BUDGET = 1024L * 1024 * 1024;
+    private static final long DEFAULT_SCRATCH_MAX_AGE = 60 * 60 * 1000;
+    private static final long DEFAULT_SCRATCH_GRACE_PERIOD = 60 * 1000;
+    private static final int DEFAULT_ASYNC_THREADS = 2;
+    private static final long DEFAULT_PUSH_WINDOW = 1000;
+    private static final long DEFAULT_BLOB_CACHE_BUDGET = 16 * 1024 * 1024;
+    private static final long DEFAULT_BLOB_CACHE_THRESHOLD = 256 * 1024;
+    private static final String SPARSE_CONFIG_SECTION = "openengsb";
+    private static final long BLOB_STORE_GC_INTERVAL = 10 * 60 * 1000;
+    private static final String SEEN_BRANCHES_PREFIX = "refs/openengsb/branches/";
+    private static final String SPARSE_CONFIG_KEY = "sparse";
+    private static final int MAX_PENDING_ASYNC_OPERATIONS = 100;
 
     private String remoteLocation;
     private File localWorkspace;
     private String watchBranch;
-    private FileRepository repository;
+    private volatile FileRepository repository;
     private boolean submodulesHack;
+    private boolean warmup;
+    private boolean warmedUp;
+    private boolean push;
+    private long pushWindow = DEFAULT_PUSH_WINDOW;
+    private PushBatcher pushBatcher;
+    private volatile FetchProgressMonitor fetchProgress;
+    private volatile long fetchBandwidthLimit;
+    private String sparseInclude;
+    private String sparseExclude;
+    private volatile SparseFilter sparseFilter;
+    private int checkoutThreads = Runtime.getRuntime().availableProcessors();
+    private volatile CheckoutTimings lastCheckoutTimings;
+    private boolean useBlobStore;
+    private BlobStore blobStore;
+    private long lastBlobStoreGc;
+    private volatile List<Pattern> branchPatterns;
+    private final WindowCacheProfile windowCacheProfile = new WindowCacheProfile();
+    private TagIndex tagIndex;
+    private RemoteRefWatcher remoteRefWatcher;
+    private final PollStatistics pollStatistics = new PollStatistics();
+    private ChangedPathsIndex changedPathsIndex;
+    private CommitGraph commitGraph;
+    private BlobContentCache blobContentCache;
+    private long blobCacheBudget = DEFAULT_BLOB_CACHE_BUDGET;
+    private long blobCacheThreshold = DEFAULT_BLOB_CACHE_THRESHOLD;
+    private ContentSearcher contentSearcher;
+    private ScratchArea scratchArea;
+    private long scratchBudget = DEFAULT_SCRATCH_BUDGET;
+    private long scratchMaxAge = DEFAULT_SCRATCH_MAX_AGE;
+    private long scratchGracePeriod = DEFAULT_SCRATCH_GRACE_PERIOD;
+    private final ReadWriteLock workspaceLock = new ReentrantReadWriteLock();
+    private final Object flightLock = new Object();
+    private UpdateFlight currentFlight;
+    private ExecutorService asyncExecutor;
+    private int asyncThreads = DEFAULT_ASYNC_THREADS;
 
     public GitServiceImpl(String instanceId) {
         super(instanceId);
@@ -103,17 +182,199 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
 
     @Override
     public List<CommitRef> update() {
-        List<CommitRef> commits = new ArrayList<CommitRef>();
+        final List<CommitRef> commits = new ArrayList<CommitRef>();
+        int count = update(new CommitPageHandler() {
+            @Override
+            public void handlePage(List<CommitRef> page) {
+                commits.addAll(page);
+            }
+        }, DEFAULT_PAGE_SIZE, 0, InitialSyncPolicy.FULL_HISTORY);
+        return count < 0 ? null : commits;
+    }
+
+    /**
+     * Updates the local repository like {@link #update()} but hands the new commits to {@code handler} in pages of
+     * at most {@code pageSize} commits while they are walked, instead of collecting them in a single list.
+     *
+     * @param maxCount maximum number of commits to deliver, or {@code 0} for no limit
+     * @param policy which commits to report if the local repository is cloned by this call
+     * @return the number of delivered commits, or {@code -1} if the watched branch could not be fetched
+     */
+    public int update(CommitPageHandler handler, int pageSize, int maxCount, InitialSyncPolicy policy) {
+        AnyObjectId seenHead = resolveHead();
+        UpdateFlight flight;
+        boolean leader = false;
+        synchronized (flightLock) {
+            flight = currentFlight;
+            if (flight == null) {
+                flight = new UpdateFlight();
+                currentFlight = flight;
+                leader = true;
+            }
+        }
+        if (leader) {
+            Lock lock = null;
+            AnyObjectId newHead = null;
+            RuntimeException error = null;
+            try {
+                lock = lockWorkspace(workspaceLock.writeLock());
+                seenHead = resolveHead();
+                newHead = syncWithRemote();
+            } catch (RuntimeException e) {
+                error = e;
+                throw e;
+            } finally {
+                // callers arriving from now on start a new update, since this one may have missed their changes
+                synchronized (flightLock) {
+                    currentFlight = null;
+                }
+                if (lock != null) {
+                    lock.unlock();
+                }
+                if (error != null) {
+                    flight.fail(error);
+                } else {
+                    flight.complete(newHead);
+                }
+            }
+        } else {
+            LOGGER.debug("Joining update of connector {} in progress", getInstanceId());
+            flight.await();
+        }
+        return reportCommits(seenHead, flight.newHead, handler, pageSize, maxCount, policy);
+    }
+
+    /**
+     * Fetches all watched branches in a single fetch and returns the commits that became reachable from each of
+     * them, newest first, keyed by branch name. Only the remote tracking refs are updated; the workspace keeps
+     * following the watch branch through {@link #update()}. The commits reported for a branch are remembered in
+     * {@code refs/openengsb/branches}, so the ranges do not depend on calls to {@link #update()}.
+     */
+    public Map<String, List<CommitRef>> updateBranches() {
+        Lock lock = lockWorkspace(workspaceLock.writeLock());
+        RevWalk walk = null;
         try {
-            if (repository == null) {
-                prepareWorkspace();
-                initRepository();
+            openRepository();
+            FetchProgressMonitor monitor = new FetchProgressMonitor(repository.getObjectsDirectory(),
+                fetchBandwidthLimit);
+            fetchProgress = monitor;
+            try {
+                doRemoteUpdate(monitor);
+            } finally {
+                monitor.finish();
+            }
+            if (tagIndex != null) {
+                tagIndex.refresh();
+            }
+            String trackingPrefix = Constants.R_REMOTES + "origin/";
+            Map<String, Ref> tracking = repository.getRefDatabase().getRefs(trackingPrefix);
+            Map<String, List<CommitRef>> result = new TreeMap<String, List<CommitRef>>();
+            walk = new RevWalk(repository);
+            walk.setRetainBody(false);
+            for (Map.Entry<String, Ref> entry : tracking.entrySet()) {
+                String branch = entry.getKey();
+                if (!isWatchedBranch(branch) || entry.getValue().getObjectId() == null) {
+                    continue;
+                }
+                ObjectId newId = entry.getValue().getObjectId();
+                String seenRef = SEEN_BRANCHES_PREFIX + branch;
+                Ref seen = repository.getRef(seenRef);
+                List<CommitRef> commits = new ArrayList<CommitRef>();
+                if (seen == null || !newId.equals(seen.getObjectId())) {
+                    walk.reset();
+                    walk.markStart(walk.parseCommit(newId));
+                    if (seen != null && seen.getObjectId() != null && repository.hasObject(seen.getObjectId())) {
+                        walk.markUninteresting(walk.parseCommit(seen.getObjectId()));
+                    }
+                    for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+                        commits.add(new GitCommitRef(commit));
+                    }
+                    RefUpdate update = repository.updateRef(seenRef);
+                    update.setNewObjectId(newId);
+                    update.forceUpdate();
+                }
+                result.put(branch, commits);
+            }
+            LOGGER.debug("Updated {} watched branches", result.size());
+            return result;
+        } catch (IOException e) {
+            throw new ScmException(e);
+        } finally {
+            if (walk != null) {
+                walk.release();
+            }
+            lock.unlock();
+        }
+    }
+
+    private boolean isWatchedBranch(String branch) {
+        List<Pattern> patterns = branchPatterns;
+        if (patterns == null) {
+            return branch.equals(watchBranch);
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(branch).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the branches returned by {@link #updateBranches()} as comma separated list of names or patterns, where
+     * {@code *} matches any part of a name, e.g. {@code master,release/*}. Only the watch branch is returned if not
+     * set.
+     */
+    public void setBranches(String branches) {
+        if (branches == null || branches.trim().length() == 0) {
+            branchPatterns = null;
+            return;
+        }
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String branch : branches.split(",")) {
+            String trimmed = branch.trim();
+            if (trimmed.length() == 0) {
+                continue;
+            }
+            StringBuilder regex = new StringBuilder();
+            String[] parts = trimmed.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(parts[i]));
             }
+            patterns.add(Pattern.compile(regex.toString()));
+        }
+        branchPatterns = patterns;
+    }
+
+    private AnyObjectId resolveHead() {
+        if (repository == null) {
+            return null;
+        }
+        try {
+            return repository.resolve(Constants.HEAD);
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Fetches and merges the watched branch and returns the new HEAD, or {@code null} if the watched branch could
+     * not be fetched.
+     */
+    private AnyObjectId syncWithRemote() {
+        FetchProgressMonitor monitor = null;
+        try {
+            openRepository();
+            monitor = new FetchProgressMonitor(repository.getObjectsDirectory(), fetchBandwidthLimit);
+            fetchProgress = monitor;
             Git git = new Git(repository);
             AnyObjectId oldHead = repository.resolve(Constants.HEAD);
             if (oldHead == null) {
                 LOGGER.debug("Local repository is empty. Fetching remote repository.");
-                FetchResult fetchResult = doRemoteUpdate();
+                FetchResult fetchResult = doRemoteUpdate(monitor);
                 if (fetchResult.getTrackingRefUpdate(Constants.R_REMOTES + "origin/" + watchBranch) == null) {
                     LOGGER.debug("Nothing to fetch from remote repository.");
                     return null;
@@ -128,9 +389,20 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
                     submoduleHack(true);
                 }
             } else {
+                applySparseFilterIfChanged(oldHead);
+                if (isRemoteUnchanged(oldHead)) {
+                    LOGGER.debug("Watched branch unchanged on remote. Skipping pull.");
+                    pollStatistics.recordSkippedPoll();
+                    return oldHead;
+                }
+                pollStatistics.recordFullPoll();
                 LOGGER.debug("Local repository exists. Pulling remote repository.");
                 try {
-                    git.pull().call();
+                    if (sparseFilter != null) {
+                        sparsePull(git, oldHead, monitor);
+                    } else {
+                        git.pull().setProgressMonitor(monitor).call();
+                    }
                 } catch (Exception e2) {
                     if (!submodulesHack) {
                         throw e2;
@@ -140,29 +412,89 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
                     repository.scanForRepoChanges();
                 }
             }
+            if (tagIndex != null) {
+                tagIndex.refresh();
+            }
             AnyObjectId newHead = repository.resolve(Constants.HEAD);
             if (newHead == null) {
                 LOGGER.debug("New HEAD of local repository doesnt exist.");
                 return null;
             }
-            if (newHead != oldHead) {
-                LogCommand logCommand = git.log();
-                if (oldHead == null) {
-                    LOGGER.debug("Retrieving revisions from HEAD [{}] on", newHead.name());
-                    logCommand.add(newHead);
-                } else {
-                    LOGGER.debug("Retrieving revisions in range [{}, {}]", newHead.name(), oldHead.name());
-                    logCommand.addRange(oldHead, newHead);
-                }
-                Iterable<RevCommit> revisions = logCommand.call();
-                for (RevCommit revision : revisions) {
-                    commits.add(new GitCommitRef(revision));
-                }
+            if (!newHead.equals(oldHead)) {
+                indexChangedPaths();
             }
+            return newHead;
         } catch (Exception e) {
             throw new ScmException(e);
+        } finally {
+            if (monitor != null) {
+                monitor.finish();
+            }
+        }
+    }
+
+    /**
+     * Delivers the commits between the HEAD a caller saw before its update and the HEAD after the update.
+     */
+    private int reportCommits(AnyObjectId oldHead, AnyObjectId newHead, CommitPageHandler handler, int pageSize,
+            int maxCount, InitialSyncPolicy policy) {
+        if (newHead == null) {
+            return -1;
+        }
+        if (newHead.equals(oldHead)) {
+            return 0;
+        }
+        try {
+            if (oldHead == null && policy == InitialSyncPolicy.HEAD_ONLY) {
+                LOGGER.debug("Reporting only HEAD [{}] of initial clone", newHead.name());
+                List<CommitRef> page = new ArrayList<CommitRef>(1);
+                page.add(new GitCommitRef(new RevWalk(repository).lookupCommit(newHead)));
+                handler.handlePage(page);
+                return 1;
+            }
+            return streamCommits(oldHead, newHead, handler, pageSize, maxCount);
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Walks the commits reachable from {@code to} but not from {@code from} and delivers them page by page. Commit
+     * bodies are not retained since the delivered references only need the commit ids.
+     */
+    private int streamCommits(AnyObjectId from, AnyObjectId to, CommitPageHandler handler, int pageSize,
+            int maxCount) throws IOException {
+        RevWalk walk = new RevWalk(repository);
+        try {
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(to));
+            if (from == null) {
+                LOGGER.debug("Retrieving revisions from HEAD [{}] on", to.name());
+            } else {
+                LOGGER.debug("Retrieving revisions in range [{}, {}]", to.name(), from.name());
+                walk.markUninteresting(walk.parseCommit(from));
+            }
+            int count = 0;
+            List<CommitRef> page = new ArrayList<CommitRef>(pageSize);
+            for (RevCommit revision = walk.next(); revision != null; revision = walk.next()) {
+                page.add(new GitCommitRef(revision));
+                count++;
+                if (page.size() == pageSize) {
+                    handler.handlePage(page);
+                    page = new ArrayList<CommitRef>(pageSize);
+                }
+                if (maxCount > 0 && count == maxCount) {
+                    LOGGER.debug("Stopping revision walk after {} commits", count);
+                    break;
+                }
+            }
+            if (!page.isEmpty()) {
+                handler.handlePage(page);
+            }
+            return count;
+        } finally {
+            walk.release();
         }
-        return commits;
     }
 
     /**
@@ -194,22 +526,86 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
         }
     }
 
+    /**
+     * Opens the repository unless it is open already. Concurrent callers wait for the first one instead of opening
+     * the repository a second time.
+     */
+    private void openRepository() throws IOException {
+        if (repository != null) {
+            return;
+        }
+        synchronized (this) {
+            if (repository == null) {
+                prepareWorkspace();
+                initRepository();
+            }
+        }
+    }
+
     /**
      * Initializes the {@link FileRepository} or creates a new own if it does
-     * not exist.
+     * not exist. Only called through {@link #openRepository()}.
      */
     private void initRepository() throws IOException {
         FileRepositoryBuilder builder = new FileRepositoryBuilder();
         builder.setWorkTree(localWorkspace);
-        repository = builder.build();
+        FileRepository opened = builder.build();
+        tagIndex = null;
+        changedPathsIndex = null;
+        commitGraph = null;
+        blobStore = null;
+        if (contentSearcher != null) {
+            contentSearcher.shutdown();
+            contentSearcher = null;
+        }
         if (!new File(localWorkspace, ".git").isDirectory()) {
-            repository.create();
-            repository.getConfig().setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
-            repository.getConfig().setString("remote", "origin", "url", remoteLocation);
-            repository.getConfig().setString("branch", "master", "remote", "origin");
-            repository.getConfig().setString("branch", "master", "merge", "refs/heads/" + watchBranch);
-            repository.getConfig().save();
+            opened.create();
+            opened.getConfig().setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+            opened.getConfig().setString("remote", "origin", "url", remoteLocation);
+            opened.getConfig().setString("branch", "master", "remote", "origin");
+            opened.getConfig().setString("branch", "master", "merge", "refs/heads/" + watchBranch);
+            opened.getConfig().save();
+        }
+        WindowCacheTuner.register(getInstanceId(), opened.getObjectsDirectory(), windowCacheProfile);
+        // published last, so that callers skipping the guard never see a repository still being created
+        repository = opened;
+    }
+
+    /**
+     * Releases the repository and the background threads of this connector, e.g. when it is removed. The connector
+     * opens its repository again when it is used afterwards.
+     */
+    public void close() {
+        // operations holding the workspace lock keep using the repository and the content searcher until they end
+        Lock lock = lockWorkspace(workspaceLock.writeLock());
+        try {
+            synchronized (this) {
+                stopWatching();
+                resetPushBatcher();
+                if (asyncExecutor != null) {
+                    asyncExecutor.shutdown();
+                    asyncExecutor = null;
+                }
+                closeRepository();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the repository and removes it from the window cache sizing.
+     */
+    private synchronized void closeRepository() {
+        if (contentSearcher != null) {
+            contentSearcher.shutdown();
+            contentSearcher = null;
         }
+        if (repository != null) {
+            repository.close();
+            repository = null;
+        }
+        WindowCacheTuner.unregister(getInstanceId());
     }
 
     protected void doCheckout(FetchResult fetchResult) throws IOException {
@@ -231,17 +627,124 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
         u.setNewObjectId(mapCommit.getId());
         u.forceUpdate();
 
-        DirCacheCheckout dirCacheCheckout = new DirCacheCheckout(repository, null, repository.lockDirCache(), mapCommit
-                .getTree());
-        dirCacheCheckout.setFailOnConflict(true);
-        boolean checkoutResult = dirCacheCheckout.checkout();
+        SparseFilter filter = sparseFilter;
+        lastCheckoutTimings = new ParallelCheckout(repository, filter, checkoutThreads).checkout(mapCommit.getTree());
         LOGGER.debug("Checked out new repository revision to working directory");
-        if (!checkoutResult) {
-            throw new IOException("Internal error occured on checking out files");
+        if (filter != null) {
+            saveAppliedSparseFilter();
+        }
+    }
+
+    /**
+     * Returns the phase timings of the initial checkout of the workspace, or {@code null} if this instance did not
+     * clone the repository.
+     */
+    public CheckoutTimings getLastCheckoutTimings() {
+        return lastCheckoutTimings;
+    }
+
+    /**
+     * Sets the number of threads writing files during the initial checkout.
+     */
+    public void setCheckoutThreads(String checkoutThreads) {
+        int threads = Integer.parseInt(checkoutThreads.trim());
+        if (threads < 1) {
+            throw new IllegalArgumentException("checkoutThreads has to be positive");
+        }
+        this.checkoutThreads = threads;
+    }
+
+    /**
+     * Updates a sparse workspace: fetches the remote and fast-forwards HEAD to the watched branch, writing only the
+     * matching paths that changed. If local commits diverged from the remote, the branches are merged and the work
+     * tree is pruned to the filter again.
+     */
+    private void sparsePull(Git git, AnyObjectId oldHead, ProgressMonitor monitor) throws Exception {
+        doRemoteUpdate(monitor);
+        Ref tracking = repository.getRef(Constants.R_REMOTES + "origin/" + watchBranch);
+        if (tracking == null) {
+            return;
+        }
+        RevWalk walk = new RevWalk(repository);
+        try {
+            RevCommit head = walk.parseCommit(oldHead);
+            RevCommit remote = walk.parseCommit(tracking.getObjectId());
+            if (walk.isMergedInto(remote, head)) {
+                return;
+            }
+            SparseCheckout checkout = new SparseCheckout(repository, sparseFilter);
+            if (walk.isMergedInto(head, remote)) {
+                LOGGER.debug("Fast-forwarding sparse workspace to [{}]", remote.name());
+                RefUpdate update = repository.updateRef(Constants.HEAD);
+                update.setNewObjectId(remote);
+                update.setExpectedOldObjectId(oldHead);
+                update.setRefLogMessage("pull: Fast-forward", false);
+                RefUpdate.Result result = update.update(walk);
+                if (result != RefUpdate.Result.FAST_FORWARD && result != RefUpdate.Result.NEW) {
+                    throw new IOException("Updating HEAD to " + remote.name() + " failed with " + result);
+                }
+                checkout.checkout(head, remote);
+            } else {
+                LOGGER.debug("Sparse workspace diverged from remote, merging [{}]", remote.name());
+                git.merge().include(tracking).call();
+                checkout.checkout(null, walk.parseCommit(repository.resolve(Constants.HEAD)));
+            }
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Materializes the checked out commit again if the sparse filter differs from the one the workspace was last
+     * checked out with, writing newly included paths and deleting excluded ones. Without a filter the complete tree
+     * is written.
+     */
+    private void applySparseFilterIfChanged(AnyObjectId head) throws IOException {
+        SparseFilter filter = sparseFilter;
+        String applied = repository.getConfig().getString(SPARSE_CONFIG_SECTION, null, SPARSE_CONFIG_KEY);
+        if (applied == null && filter == null || filter != null && filter.toString().equals(applied)) {
+            return;
+        }
+        if (filter == null) {
+            filter = new SparseFilter(new ArrayList<String>(), new ArrayList<String>());
+        }
+        RevWalk walk = new RevWalk(repository);
+        try {
+            LOGGER.debug("Applying sparse filter ({}) to workspace", filter);
+            new SparseCheckout(repository, filter).checkout(null, walk.parseCommit(head));
+        } finally {
+            walk.release();
         }
+        saveAppliedSparseFilter();
+    }
+
+    private void saveAppliedSparseFilter() throws IOException {
+        if (sparseFilter == null) {
+            repository.getConfig().unset(SPARSE_CONFIG_SECTION, null, SPARSE_CONFIG_KEY);
+        } else {
+            repository.getConfig().setString(SPARSE_CONFIG_SECTION, null, SPARSE_CONFIG_KEY, sparseFilter.toString());
+        }
+        repository.getConfig().save();
     }
 
     protected FetchResult doRemoteUpdate() throws IOException {
+        return doRemoteUpdate(NullProgressMonitor.INSTANCE);
+    }
+
+    protected FetchResult doRemoteUpdate(ProgressMonitor monitor) throws IOException {
+        Transport transport = openTransport();
+        try {
+            LOGGER.debug("Fetching content from remote repository");
+            return transport.fetch(monitor, null);
+        } finally {
+            if (transport != null) {
+                transport.close();
+            }
+            WindowCacheTuner.refresh();
+        }
+    }
+
+    Transport openTransport() throws IOException {
         List<RemoteConfig> remoteConfig = null;
         try {
             LOGGER.debug("Fetching remote configurations from repository configuration");
@@ -251,49 +754,116 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
         }
 
         LOGGER.debug("Opening transport to {}", remoteConfig.get(0).getName());
-        Transport transport = Transport.open(repository, remoteConfig.get(0));
+        return Transport.open(repository, remoteConfig.get(0));
+    }
+
+    /**
+     * Reads only the ref advertisement of the remote and checks whether the watched branch still points to the
+     * commit of the local tracking branch, and that commit is already contained in HEAD.
+     */
+    private boolean isRemoteUnchanged(AnyObjectId head) throws IOException {
+        Ref tracking = repository.getRef(Constants.R_REMOTES + "origin/" + watchBranch);
+        if (tracking == null || tracking.getObjectId() == null) {
+            return false;
+        }
+        Ref advertised;
+        Transport transport = openTransport();
         try {
-            LOGGER.debug("Fetching content from remote repository");
-            return transport.fetch(NullProgressMonitor.INSTANCE, null);
-        } finally {
-            if (transport != null) {
-                transport.close();
+            FetchConnection connection = transport.openFetch();
+            try {
+                advertised = connection.getRef(Constants.R_HEADS + watchBranch);
+            } finally {
+                connection.close();
             }
+        } finally {
+            transport.close();
+        }
+        if (advertised == null || !tracking.getObjectId().equals(advertised.getObjectId())) {
+            return false;
+        }
+        if (tracking.getObjectId().equals(head)) {
+            return true;
         }
+        RevWalk walk = new RevWalk(repository);
+        try {
+            return walk.isMergedInto(walk.parseCommit(tracking.getObjectId()), walk.parseCommit(head));
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Returns how many polls were answered by the ref pre-check alone and how many ran a full fetch and merge.
+     */
+    public PollStatistics getPollStatistics() {
+        return pollStatistics;
     }
 
-    private OpenEngSBFileModel createFileModel(File f) {
-        OpenEngSBFileModel model = new OpenEngSBFileModel();
-        model.setFile(f);
-        return model;
+    /**
+     * Returns the scratch area holding the outputs of {@code get()} and {@code export()}, creating it and removing
+     * orphans of a previous run on first use.
+     */
+    private synchronized ScratchArea getScratchArea() throws IOException {
+        if (scratchArea == null) {
+            File root = new File(System.getProperty("java.io.tmpdir"), "openengsb-git-" + getInstanceId());
+            scratchArea = new ScratchArea(root, scratchBudget, scratchMaxAge, scratchGracePeriod);
+        }
+        return scratchArea;
     }
 
     @Override
     public OpenEngSBFileModel export() {
+        Lock lock = lockWorkspace(workspaceLock.readLock());
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            return doExport();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private OpenEngSBFileModel doExport() {
+        try {
+            openRepository();
 
             LOGGER.debug("Exporting repository to OpenEngSBFileModel");
-            File tmp = File.createTempFile("repository", "");
-            tmp.delete();
-            tmp.mkdir();
-            FileUtils.copyDirectory(localWorkspace, tmp);
-            return createFileModel(tmp);
+            File tmp = getScratchArea().createDirectory("repository");
+            copyWorkspace(tmp);
+            return getScratchArea().track(tmp);
         } catch (IOException e) {
             throw new ScmException(e);
         }
     }
 
+    /**
+     * Copies the workspace including the repository, but without the connector's own caches in
+     * {@code .git/openengsb}.
+     */
+    private void copyWorkspace(File target) throws IOException {
+        final File caches = new File(new File(localWorkspace, Constants.DOT_GIT), "openengsb");
+        FileUtils.copyDirectory(localWorkspace, target, new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.equals(caches);
+            }
+        });
+    }
+
     @Override
     public OpenEngSBFileModel export(CommitRef ref) {
+        // checks the revision out into the workspace for the time of the copy
+        Lock lock = lockWorkspace(workspaceLock.writeLock());
+        try {
+            return doExport(ref);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private OpenEngSBFileModel doExport(CommitRef ref) {
         RevWalk rw = null;
-        File tmp = null;
+        File tmp;
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            openRepository();
 
             LOGGER.debug("Resolving HEAD and reference [{}]", ref.getStringRepresentation());
             AnyObjectId headId = repository.resolve(Constants.HEAD);
@@ -306,15 +876,14 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
             RevCommit commit = rw.parseCommit(refId);
 
             LOGGER.debug("Checking out working copy of revision");
-            checkoutIndex(commit);
+            checkoutIndex(head, commit);
 
-            tmp = File.createTempFile("repository", "");
-            tmp.delete();
-            tmp.mkdir();
+            tmp = getScratchArea().createDirectory("repository");
             LOGGER.debug("Exporting repository to OpenEngSBFileModel");
-            FileUtils.copyDirectory(localWorkspace, tmp);
+            copyWorkspace(tmp);
             LOGGER.debug("Checking out working copy of former HEAD revision");
-            checkoutIndex(head);
+            checkoutIndex(commit, head);
+            return getScratchArea().track(tmp);
         } catch (IOException e) {
             throw new ScmException(e);
         } finally {
@@ -322,10 +891,79 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
                 rw.release();
             }
         }
-        return createFileModel(tmp);
     }
 
-    private void checkoutIndex(RevCommit commit) {
+    /**
+     * Exports a directory or file of a revision straight from the object database. Unlike {@link #export(CommitRef)}
+     * the work tree is not touched and only the objects below {@code pathPrefix} are read.
+     *
+     * @param ref the revision to export, HEAD if {@code null}
+     * @param reroot whether the exported directory becomes the root of the returned directory instead of keeping
+     *        its path
+     */
+    public OpenEngSBFileModel export(CommitRef ref, String pathPrefix, boolean reroot) {
+        RevWalk walk = null;
+        try {
+            openRepository();
+            String revision = ref == null ? Constants.HEAD : ref.getStringRepresentation();
+            AnyObjectId id = repository.resolve(revision);
+            if (id == null) {
+                throw new ScmException("Reference [" + revision + "] doesn't exist.");
+            }
+            walk = new RevWalk(repository);
+            RevCommit commit = walk.parseCommit(id);
+            File tmp = getScratchArea().createDirectory("subtree");
+            String path = normalizePath(pathPrefix);
+            LOGGER.debug("Exporting [{}] of revision {}", path, commit.name());
+            int files = new TreeExporter(repository, getBlobStore()).export(commit.getTree(), path, tmp, reroot);
+            LOGGER.debug("Exported {} files", files);
+            return getScratchArea().track(tmp);
+        } catch (IOException e) {
+            throw new ScmException(e);
+        } finally {
+            if (walk != null) {
+                walk.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the blob store for exports if they should use one, collecting unreferenced blobs from time to time.
+     * The store lives next to the scratch area, so that exports can be hard linked to it.
+     */
+    private synchronized BlobStore getBlobStore() throws IOException {
+        if (!useBlobStore) {
+            return null;
+        }
+        if (blobStore == null) {
+            File scratchRoot = getScratchArea().getRoot();
+            blobStore = new BlobStore(new File(scratchRoot.getParentFile(), scratchRoot.getName() + "-blobs"));
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastBlobStoreGc >= BLOB_STORE_GC_INTERVAL) {
+            lastBlobStoreGc = now;
+            blobStore.gc();
+        }
+        return blobStore;
+    }
+
+    /**
+     * Enables materializing subtree exports through a blob store next to the scratch area, hard linking the exported
+     * files where possible. Hard linked files are read-only.
+     */
+    public synchronized void setBlobStore(String string) {
+        useBlobStore = new Boolean(string).booleanValue();
+    }
+
+    private void checkoutIndex(RevCommit current, RevCommit commit) {
+        if (sparseFilter != null) {
+            try {
+                new SparseCheckout(repository, sparseFilter).checkout(current, commit);
+            } catch (IOException e) {
+                throw new ScmException(e);
+            }
+            return;
+        }
         DirCache dc = null;
         try {
             dc = repository.lockDirCache();
@@ -357,6 +995,10 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
         }
     }
 
+    public String getRemoteLocation() {
+        return remoteLocation;
+    }
+
     public void setLocalWorkspace(String localWorkspace) {
         File workspaceFile = new File(localWorkspace);
         if (workspaceFile.isAbsolute()) {
@@ -371,20 +1013,19 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
     }
 
     public FileRepository getRepository() {
-        if (repository == null) {
-            prepareWorkspace();
-            try {
-                initRepository();
-            } catch (IOException e) {
-                throw new ScmException(e);
-            }
+        try {
+            openRepository();
+        } catch (IOException e) {
+            throw new ScmException(e);
         }
         return repository;
     }
 
     @Override
     public boolean exists(String arg0) {
+        Lock lock = lockWorkspace(workspaceLock.readLock());
         try {
+            openRepository();
             AnyObjectId id = repository.resolve(Constants.HEAD);
             RevCommit commit = new RevWalk(repository).parseCommit(id);
             LOGGER.debug("Looking up file {} in HEAD revision", arg0);
@@ -397,15 +1038,16 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
             return !objectId.equals(ObjectId.zeroId());
         } catch (Exception e) {
             throw new ScmException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public OpenEngSBFileModel get(String file) {
+        Lock lock = lockWorkspace(workspaceLock.readLock());
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            openRepository();
             AnyObjectId id = repository.resolve(Constants.HEAD);
             RevCommit commit = new RevWalk(repository).parseCommit(id);
             LOGGER.debug("Looking up file {} in HEAD revision", file);
@@ -420,20 +1062,21 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
             }
             String fileName = getFilename(file);
             LOGGER.debug("Creating file from saved repository content");
-            File tmp = File.createTempFile(fileName, null);
-            tmp.deleteOnExit();
-            OutputStream os = new FileOutputStream(tmp);
-            os.write(repository.open(objectId).getCachedBytes());
-            os.close();
-            return createFileModel(tmp);
+            File tmp = getScratchArea().createFile(fileName);
+            writeBlob(objectId, tmp);
+            return getScratchArea().track(tmp);
         } catch (Exception e) {
             throw new ScmException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public boolean exists(String arg0, CommitRef arg1) {
+        Lock lock = lockWorkspace(workspaceLock.readLock());
         try {
+            openRepository();
             AnyObjectId id = repository.resolve(arg1.getStringRepresentation());
             RevCommit commit = new RevWalk(repository).parseCommit(id);
             LOGGER.debug("Looking up file {} in revision {}", arg0, arg1.getStringRepresentation());
@@ -446,15 +1089,16 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
             return !objectId.equals(ObjectId.zeroId());
         } catch (Exception e) {
             throw new ScmException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public OpenEngSBFileModel get(String file, CommitRef ref) {
+        Lock lock = lockWorkspace(workspaceLock.readLock());
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            openRepository();
             AnyObjectId id = repository.resolve(ref.getStringRepresentation());
             RevCommit commit = new RevWalk(repository).parseCommit(id);
             LOGGER.debug("Looking up file {} in revision {}", file, ref.getStringRepresentation());
@@ -468,17 +1112,52 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
             }
             String fileName = getFilename(file);
             LOGGER.debug("Creating file from saved repository content");
-            File tmp = File.createTempFile(fileName, null);
-            tmp.deleteOnExit();
-            OutputStream os = new FileOutputStream(tmp);
-            os.write(repository.open(objectId).getCachedBytes());
-            os.close();
-            return createFileModel(tmp);
+            File tmp = getScratchArea().createFile(fileName);
+            writeBlob(objectId, tmp);
+            return getScratchArea().track(tmp);
         } catch (Exception e) {
             throw new ScmException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Writes the content of a blob to {@code file}. Small blobs are served from and added to the blob content cache,
+     * larger ones are streamed from the object database.
+     */
+    private void writeBlob(ObjectId blob, File file) throws IOException {
+        BlobContentCache cache = getBlobContentCache();
+        byte[] content = cache == null ? null : cache.get(blob);
+        OutputStream os = new FileOutputStream(file);
+        try {
+            if (content != null) {
+                os.write(content);
+                return;
+            }
+            ObjectLoader loader = repository.open(blob, Constants.OBJ_BLOB);
+            if (cache != null && cache.admits(loader.getSize())) {
+                content = loader.getCachedBytes();
+                cache.put(blob, content);
+                os.write(content);
+            } else {
+                loader.copyTo(os);
+            }
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * Returns the blob content cache of {@code get()} with its statistics, or {@code null} if it is disabled.
+     */
+    public synchronized BlobContentCache getBlobContentCache() {
+        if (blobContentCache == null && blobCacheBudget > 0) {
+            blobContentCache = new BlobContentCache(blobCacheBudget, blobCacheThreshold);
+        }
+        return blobContentCache;
+    }
+
     /**
      * Returns the name of a file from a passed repository path.
      */
@@ -494,39 +1173,40 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
 
     @Override
     public CommitRef getHead() {
+        Lock lock = lockWorkspace(workspaceLock.readLock());
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            openRepository();
             AnyObjectId id = repository.resolve(Constants.HEAD);
             RevCommit commit = new RevWalk(repository).parseCommit(id);
             LOGGER.debug("Resolved HEAD to commit {}", commit.getId().name());
             return new GitCommitRef(commit);
         } catch (IOException e) {
-            if (repository != null) {
-                repository.close();
-                repository = null;
-            }
             throw new ScmException(e);
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public CommitRef add(String comment, File... file) {
+        Lock lock = lockWorkspace(workspaceLock.writeLock());
+        try {
+            return doAdd(comment, file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CommitRef doAdd(String comment, File... file) {
         if (file.length == 0) {
             LOGGER.debug("No files to add in list");
             return null;
         }
-        if (repository == null) {
-            prepareWorkspace();
-            try {
-                initRepository();
-            } catch (IOException e) {
-                if (repository != null) {
-                    repository.close();
-                }
-                throw new ScmException(e);
-            }
+        try {
+            openRepository();
+        } catch (IOException e) {
+            closeRepository();
+            throw new ScmException(e);
         }
 
         Git git = new Git(repository);
@@ -543,7 +1223,46 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
 
             add.call();
             LOGGER.debug("Committing added files with comment '{}'", comment);
-            return new GitCommitRef(git.commit().setMessage(comment).call());
+            RevCommit commit = git.commit().setMessage(comment).call();
+            indexChangedPaths();
+            schedulePush(repository.getFullBranch(), Constants.R_HEADS + watchBranch);
+            return new GitCommitRef(commit);
+        } catch (Exception e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Adds many files, or all files below directories, of the working directory in a single commit. Unlike
+     * {@link #add(String, File...)} the new blobs are written into one pack instead of one loose object each.
+     */
+    public CommitRef bulkAdd(String comment, File... file) {
+        Lock lock = lockWorkspace(workspaceLock.writeLock());
+        try {
+            return doBulkAdd(comment, file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CommitRef doBulkAdd(String comment, File... file) {
+        if (file.length == 0) {
+            LOGGER.debug("No files to add in list");
+            return null;
+        }
+        try {
+            openRepository();
+        } catch (IOException e) {
+            closeRepository();
+            throw new ScmException(e);
+        }
+        try {
+            int count = new BulkImporter(repository).importFiles(Arrays.asList(file));
+            LOGGER.debug("Committing {} bulk imported files with comment '{}'", count, comment);
+            RevCommit commit = new Git(repository).commit().setMessage(comment).call();
+            indexChangedPaths();
+            schedulePush(repository.getFullBranch(), Constants.R_HEADS + watchBranch);
+            return new GitCommitRef(commit);
         } catch (Exception e) {
             throw new ScmException(e);
         }
@@ -564,21 +1283,24 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
 
     @Override
     public CommitRef remove(String comment, File... file) {
+        Lock lock = lockWorkspace(workspaceLock.writeLock());
+        try {
+            return doRemove(comment, file);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CommitRef doRemove(String comment, File... file) {
         if (file.length == 0) {
             LOGGER.debug("No files to add in list");
             return null;
         }
-        if (repository == null) {
-            prepareWorkspace();
-            try {
-                initRepository();
-            } catch (IOException e) {
-                if (repository != null) {
-                    repository.close();
-                    repository = null;
-                }
-                throw new ScmException(e);
-            }
+        try {
+            openRepository();
+        } catch (IOException e) {
+            closeRepository();
+            throw new ScmException(e);
         }
 
         Git git = new Git(repository);
@@ -595,7 +1317,10 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
 
             rm.call();
             LOGGER.debug("Committing removed files with comment '{}'", comment);
-            return new GitCommitRef(git.commit().setMessage(comment).call());
+            RevCommit commit = git.commit().setMessage(comment).call();
+            indexChangedPaths();
+            schedulePush(repository.getFullBranch(), Constants.R_HEADS + watchBranch);
+            return new GitCommitRef(commit);
         } catch (Exception e) {
             throw new ScmException(e);
         }
@@ -604,12 +1329,15 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
     @Override
     public TagRef tagRepo(String tagName) {
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            openRepository();
             TagCommand tag = new Git(repository).tag();
             LOGGER.debug("Tagging HEAD with name '{}'", tagName);
-            return new GitTagRef(tag.setName(tagName).call());
+            RevTag revTag = tag.setName(tagName).call();
+            if (tagIndex != null) {
+                tagIndex.put(revTag);
+            }
+            schedulePush(Constants.R_TAGS + tagName, Constants.R_TAGS + tagName);
+            return new GitTagRef(revTag);
         } catch (Exception e) {
             throw new ScmException(e);
         }
@@ -618,9 +1346,7 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
     @Override
     public TagRef tagRepo(String tagName, CommitRef ref) {
         try {
-            if (repository == null) {
-                initRepository();
-            }
+            openRepository();
             AnyObjectId commitRef = repository.resolve(ref.getStringRepresentation());
             if (commitRef == null) {
                 LOGGER.debug("Couldnt resolve reference {} in repository", ref.getStringRepresentation());
@@ -631,7 +1357,12 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
             TagCommand tag = new Git(repository).tag();
             tag.setName(tagName).setObjectId(revCommit);
             LOGGER.debug("Tagging revision {} with name '{}'", ref.getStringRepresentation(), tagName);
-            return new GitTagRef(tag.call());
+            RevTag revTag = tag.call();
+            if (tagIndex != null) {
+                tagIndex.put(revTag);
+            }
+            schedulePush(Constants.R_TAGS + tagName, Constants.R_TAGS + tagName);
+            return new GitTagRef(revTag);
         } catch (Exception e) {
             throw new ScmException(e);
         }
@@ -640,8 +1371,15 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
     @Override
     public CommitRef getCommitRefForTag(TagRef ref) {
         try {
-            if (repository == null) {
-                initRepository();
+            openRepository();
+            TagIndex.Entry entry = lookupTag(getTagIndex(), ref);
+            if (entry != null) {
+                if (entry.getCommitId() == null) {
+                    return null;
+                }
+                LOGGER.debug("Resolved reference {} to commit {} from tag index", ref.getStringRepresentation(),
+                        entry.getCommitId().name());
+                return new GitCommitRef(new RevWalk(repository).lookupCommit(entry.getCommitId()));
             }
             AnyObjectId tagRef = repository.resolve(ref.getStringRepresentation());
             if (tagRef == null) {
@@ -662,7 +1400,814 @@ public class GitServiceImpl extends AbstractOpenEngSBConnectorService implements
         }
     }
 
+    /**
+     * Returns the commits that changed {@code path}, or any path below it if it is a directory, newest first. Only
+     * commits reachable from {@code to} (HEAD if {@code null}) and not reachable from {@code from} are returned.
+     * The commits are looked up in the changed-paths index instead of diffing trees.
+     *
+     * @param limit maximum number of commits to return, or {@code 0} for no limit
+     */
+    public List<CommitRef> getPathHistory(String path, CommitRef from, CommitRef to, int limit) {
+        RevWalk walk = null;
+        try {
+            openRepository();
+            ChangedPathsIndex index = getChangedPathsIndex();
+            index.update();
+            List<ObjectId> candidates = index.getCommits(normalizePath(path));
+            List<CommitRef> history = new ArrayList<CommitRef>();
+            walk = new RevWalk(repository);
+            if (from == null && to == null) {
+                // the update above brought the index to exactly the history of HEAD, no range walk needed
+                for (ObjectId candidate : candidates) {
+                    if (limit > 0 && history.size() == limit) {
+                        break;
+                    }
+                    history.add(new GitCommitRef(walk.lookupCommit(candidate)));
+                }
+                return history;
+            }
+            Set<ObjectId> remaining = new HashSet<ObjectId>(candidates);
+            walk.setRetainBody(false);
+            String toRevision = to == null ? Constants.HEAD : to.getStringRepresentation();
+            AnyObjectId toId = repository.resolve(toRevision);
+            if (toId == null) {
+                throw new ScmException("Reference [" + toRevision + "] doesn't exist.");
+            }
+            walk.markStart(walk.parseCommit(toId));
+            if (from != null) {
+                AnyObjectId fromId = repository.resolve(from.getStringRepresentation());
+                if (fromId == null) {
+                    throw new ScmException("Reference [" + from.getStringRepresentation() + "] doesn't exist.");
+                }
+                walk.markUninteresting(walk.parseCommit(fromId));
+            }
+            // the index is closed under ancestry, so if it contains the start commit it contains the whole range
+            boolean indexed = index.isIndexed(toId);
+            for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+                if (indexed && remaining.isEmpty()) {
+                    break;
+                }
+                boolean changed;
+                if (indexed || index.isIndexed(commit)) {
+                    changed = remaining.remove(commit);
+                } else {
+                    changed = changesPath(walk, commit, normalizePath(path));
+                }
+                if (changed) {
+                    history.add(new GitCommitRef(commit));
+                    if (limit > 0 && history.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return history;
+        } catch (IOException e) {
+            throw new ScmException(e);
+        } finally {
+            if (walk != null) {
+                walk.release();
+            }
+        }
+    }
+
+    /**
+     * Searches the files of a revision for a regular expression without exporting it. Files are read from the
+     * object database in parallel; binary files and files larger than 1 MB are skipped, and identical files are
+     * only searched once. Matches are passed to {@code handler} as soon as they are found.
+     *
+     * @param ref the revision to search, HEAD if {@code null}
+     * @return the number of matches
+     */
+    public int search(String regex, CommitRef ref, SearchMatchHandler handler) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new ScmException("Invalid search pattern [" + regex + "]: " + e.getDescription());
+        }
+        // the read lock keeps the searcher from being shut down by closing the repository meanwhile
+        Lock lock = lockWorkspace(workspaceLock.readLock());
+        RevWalk walk = null;
+        try {
+            openRepository();
+            String revision = ref == null ? Constants.HEAD : ref.getStringRepresentation();
+            AnyObjectId id = repository.resolve(revision);
+            if (id == null) {
+                throw new ScmException("Reference [" + revision + "] doesn't exist.");
+            }
+            walk = new RevWalk(repository);
+            RevCommit commit = walk.parseCommit(id);
+            LOGGER.debug("Searching revision {} for '{}'", commit.name(), regex);
+            return getContentSearcher().search(commit.getTree(), pattern, handler);
+        } catch (IOException e) {
+            throw new ScmException(e);
+        } finally {
+            if (walk != null) {
+                walk.release();
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lists the directory {@code path} of a revision page by page, reading the trees directly from the object
+     * database. Pass the cursor of a returned page to get the next one; the following pages list the same tree even
+     * if {@code ref} moved meanwhile, and {@code path} and {@code ref} are ignored then.
+     *
+     * @param ref the revision to list, HEAD if {@code null}
+     * @param maxDepth number of directory levels to list, {@code 1} for the direct children only or {@code 0} for
+     *        no limit
+     * @param withSizes whether to report the size of files
+     * @param cursor the cursor of the previous page, or {@code null} for the first page
+     */
+    public TreeListing listDirectory(String path, CommitRef ref, int maxDepth, boolean withSizes, String cursor,
+            int pageSize) {
+        RevWalk walk = null;
+        try {
+            openRepository();
+            TreeLister lister = new TreeLister(repository);
+            if (cursor != null) {
+                return lister.list(null, cursor, maxDepth, withSizes, pageSize);
+            }
+            String revision = ref == null ? Constants.HEAD : ref.getStringRepresentation();
+            AnyObjectId id = repository.resolve(revision);
+            if (id == null) {
+                throw new ScmException("Reference [" + revision + "] doesn't exist.");
+            }
+            walk = new RevWalk(repository);
+            AnyObjectId tree = walk.parseCommit(id).getTree();
+            String directory = normalizePath(path);
+            if (directory.length() > 0) {
+                TreeWalk treeWalk = TreeWalk.forPath(repository, directory, new AnyObjectId[]{ tree });
+                if (treeWalk == null || !treeWalk.isSubtree()) {
+                    throw new ScmException("Directory [" + directory + "] doesn't exist in revision " + revision);
+                }
+                tree = treeWalk.getObjectId(0);
+                treeWalk.release();
+            }
+            return lister.list(tree, null, maxDepth, withSizes, pageSize);
+        } catch (IOException e) {
+            throw new ScmException(e);
+        } finally {
+            if (walk != null) {
+                walk.release();
+            }
+        }
+    }
+
+    private synchronized ContentSearcher getContentSearcher() {
+        if (contentSearcher == null) {
+            contentSearcher = new ContentSearcher(repository, Runtime.getRuntime().availableProcessors(),
+                MAX_SEARCH_BLOB_SIZE);
+        }
+        return contentSearcher;
+    }
+
+    private static String normalizePath(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns whether {@code ancestor} is reachable from {@code commit}, answered from the commit graph. Every commit
+     * is its own ancestor.
+     */
+    public boolean isAncestor(CommitRef ancestor, CommitRef commit) {
+        try {
+            openRepository();
+            CommitGraph graph = getCommitGraph();
+            return graph.isAncestor(resolveInGraph(graph, ancestor), resolveInGraph(graph, commit));
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Returns a best common ancestor of two commits, or {@code null} if their histories are unrelated.
+     */
+    public CommitRef getMergeBase(CommitRef a, CommitRef b) {
+        try {
+            openRepository();
+            CommitGraph graph = getCommitGraph();
+            ObjectId base = graph.mergeBase(resolveInGraph(graph, a), resolveInGraph(graph, b));
+            if (base == null) {
+                return null;
+            }
+            RevWalk walk = new RevWalk(repository);
+            try {
+                return new GitCommitRef(walk.parseCommit(base));
+            } finally {
+                walk.release();
+            }
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Counts the commits reachable from {@code to} but not from {@code from}, like {@code git rev-list --count
+     * from..to}.
+     *
+     * @param from the excluded commit, or {@code null} to count the whole history of {@code to}
+     */
+    public int countCommits(CommitRef from, CommitRef to) {
+        try {
+            openRepository();
+            CommitGraph graph = getCommitGraph();
+            ObjectId fromId = from == null ? null : resolveInGraph(graph, from);
+            return graph.countRange(fromId, resolveInGraph(graph, to));
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Resolves a reference to a commit of the graph, extending the graph first if the commit is not part of it yet.
+     */
+    private ObjectId resolveInGraph(CommitGraph graph, CommitRef ref) throws IOException {
+        ObjectId id = repository.resolve(ref.getStringRepresentation() + "^{commit}");
+        if (id == null) {
+            throw new ScmException("Reference [" + ref.getStringRepresentation() + "] doesn't exist.");
+        }
+        if (!graph.contains(id)) {
+            graph.update();
+            if (!graph.contains(id)) {
+                throw new ScmException("Commit " + id.name() + " is not reachable from any reference.");
+            }
+        }
+        return id;
+    }
+
+    private synchronized CommitGraph getCommitGraph() throws IOException {
+        if (commitGraph == null) {
+            commitGraph = new CommitGraph(repository);
+        }
+        return commitGraph;
+    }
+
+    /**
+     * Diffs a commit against its first parent for commits not covered by the changed-paths index.
+     */
+    private boolean changesPath(RevWalk walk, RevCommit commit, String path) throws IOException {
+        TreeWalk treeWalk = new TreeWalk(repository);
+        try {
+            treeWalk.setRecursive(true);
+            if (path.length() == 0) {
+                treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            } else {
+                treeWalk.setFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+            }
+            if (commit.getParentCount() == 0) {
+                treeWalk.addTree(new EmptyTreeIterator());
+            } else {
+                treeWalk.addTree(walk.parseCommit(commit.getParent(0)).getTree());
+            }
+            treeWalk.addTree(commit.getTree());
+            return treeWalk.next();
+        } finally {
+            treeWalk.release();
+        }
+    }
+
+    private synchronized ChangedPathsIndex getChangedPathsIndex() throws IOException {
+        if (changedPathsIndex == null) {
+            changedPathsIndex = new ChangedPathsIndex(repository);
+        }
+        return changedPathsIndex;
+    }
+
+    /**
+     * Extends the changed-paths index by the commits that became reachable from HEAD. The index is only extended
+     * once it has been built by a history query, so that updates never pay for indexing the full history. Failures
+     * are logged only, the index catches up on the next call.
+     */
+    private void indexChangedPaths() {
+        try {
+            ChangedPathsIndex index = getChangedPathsIndex();
+            if (!index.isEmpty()) {
+                index.update();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Updating changed-paths index failed", e);
+        }
+    }
+
+    /**
+     * Returns all tags of the repository ordered by name.
+     */
+    public List<TagRef> getTags() {
+        try {
+            openRepository();
+            List<TagRef> tags = new ArrayList<TagRef>();
+            for (TagIndex.Entry entry : getTagIndex().list()) {
+                tags.add(new GitTagRef(entry.getName(), entry.getTagId()));
+            }
+            return tags;
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    /**
+     * Resolves several tags to the commits they point to in one go. The result is keyed by tag name and keeps the
+     * order of {@code refs}; tags that do not exist or do not point to a commit are mapped to {@code null}.
+     */
+    public Map<String, CommitRef> getCommitRefsForTags(Collection<? extends TagRef> refs) {
+        try {
+            openRepository();
+            TagIndex index = getTagIndex();
+            RevWalk walk = new RevWalk(repository);
+            Map<String, CommitRef> commits = new LinkedHashMap<String, CommitRef>();
+            for (TagRef ref : refs) {
+                TagIndex.Entry entry = lookupTag(index, ref);
+                String key = entry != null ? entry.getName() : ref.getTagName();
+                if (entry == null || entry.getCommitId() == null) {
+                    commits.put(key, null);
+                } else {
+                    commits.put(key, new GitCommitRef(walk.lookupCommit(entry.getCommitId())));
+                }
+            }
+            return commits;
+        } catch (IOException e) {
+            throw new ScmException(e);
+        }
+    }
+
+    private synchronized TagIndex getTagIndex() throws IOException {
+        if (tagIndex == null) {
+            LOGGER.debug("Building tag index from ref database");
+            tagIndex = new TagIndex(repository);
+        }
+        return tagIndex;
+    }
+
+    private TagIndex.Entry lookupTag(TagIndex index, TagRef ref) {
+        TagIndex.Entry entry = null;
+        if (ref.getTagName() != null) {
+            entry = index.getByName(ref.getTagName());
+        }
+        if (entry == null && ref.getStringRepresentation() != null
+                && ObjectId.isId(ref.getStringRepresentation())) {
+            entry = index.getByTagId(ObjectId.fromString(ref.getStringRepresentation()));
+        }
+        return entry;
+    }
+
+    /**
+     * Runs {@link #update()} on the connector's async executor.
+     */
+    public Future<List<CommitRef>> updateAsync() {
+        return submitAsync(new Callable<List<CommitRef>>() {
+            @Override
+            public List<CommitRef> call() {
+                return update();
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #export()} on the connector's async executor.
+     */
+    public Future<OpenEngSBFileModel> exportAsync() {
+        return submitAsync(new Callable<OpenEngSBFileModel>() {
+            @Override
+            public OpenEngSBFileModel call() {
+                return export();
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #export(CommitRef)} on the connector's async executor.
+     */
+    public Future<OpenEngSBFileModel> exportAsync(final CommitRef ref) {
+        return submitAsync(new Callable<OpenEngSBFileModel>() {
+            @Override
+            public OpenEngSBFileModel call() {
+                return export(ref);
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #get(String)} on the connector's async executor.
+     */
+    public Future<OpenEngSBFileModel> getAsync(final String file) {
+        return submitAsync(new Callable<OpenEngSBFileModel>() {
+            @Override
+            public OpenEngSBFileModel call() {
+                return get(file);
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #get(String, CommitRef)} on the connector's async executor.
+     */
+    public Future<OpenEngSBFileModel> getAsync(final String file, final CommitRef ref) {
+        return submitAsync(new Callable<OpenEngSBFileModel>() {
+            @Override
+            public OpenEngSBFileModel call() {
+                return get(file, ref);
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #add(String, File...)} on the connector's async executor.
+     */
+    public Future<CommitRef> addAsync(final String comment, final File... file) {
+        return submitAsync(new Callable<CommitRef>() {
+            @Override
+            public CommitRef call() {
+                return add(comment, file);
+            }
+        });
+    }
+
+    /**
+     * Opens the repository on the connector's async executor so that the first request does not pay for it: the
+     * repository is opened, all pack indexes and refs are loaded, HEAD is parsed and the tag and changed-paths
+     * indexes are read. Does nothing if the workspace has not been cloned yet.
+     * <p>
+     * The warm-up holds the workspace read lock, so reading requests run alongside it. A request arriving while the
+     * repository is being opened waits for it on the same guard instead of opening the repository itself.
+     */
+    public Future<Void> warmUp() {
+        return submitAsync(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                Lock lock = lockWorkspace(workspaceLock.readLock());
+                try {
+                    doWarmUp();
+                } finally {
+                    lock.unlock();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #warmUp()} the first time it is called for this connector instance, so that re-applying
+     * attributes does not load the repository again.
+     *
+     * @return the warm-up, or {@code null} if the connector was warmed up before
+     */
+    public synchronized Future<Void> warmUpOnCreation() {
+        if (warmedUp) {
+            return null;
+        }
+        warmedUp = true;
+        return warmUp();
+    }
+
+    private void doWarmUp() throws IOException {
+        if (localWorkspace == null || !new File(localWorkspace, Constants.DOT_GIT).isDirectory()) {
+            LOGGER.debug("Nothing to warm up, workspace of connector {} is not cloned yet", getInstanceId());
+            return;
+        }
+        long start = System.currentTimeMillis();
+        openRepository();
+        // looking up an object that cannot exist opens the index of every pack
+        repository.hasObject(ObjectId.zeroId());
+        Map<String, Ref> refs = repository.getAllRefs();
+        AnyObjectId head = repository.resolve(Constants.HEAD);
+        if (head != null) {
+            RevWalk walk = new RevWalk(repository);
+            try {
+                walk.parseCommit(head);
+            } finally {
+                walk.release();
+            }
+        }
+        getTagIndex();
+        getChangedPathsIndex();
+        getCommitGraph();
+        LOGGER.info("Warmed up repository of connector {} with {} refs in {} ms", new Object[]{ getInstanceId(),
+            refs.size(), System.currentTimeMillis() - start });
+    }
+
+    /**
+     * Submits an operation to the async executor. Operations take the same workspace lock as their blocking
+     * counterparts; cancelling a future interrupts an operation still waiting for the lock.
+     *
+     * @throws ScmException if the executor is saturated
+     */
+    private <T> Future<T> submitAsync(Callable<T> operation) {
+        try {
+            return getAsyncExecutor().submit(operation);
+        } catch (RejectedExecutionException e) {
+            throw new ScmException("Too many pending asynchronous operations for connector " + getInstanceId());
+        }
+    }
+
+    private synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_ASYNC_OPERATIONS), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "git-async-" + getInstanceId() + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+            asyncExecutor = executor;
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Takes the workspace lock held while the repository is updated from the remote.
+     */
+    Lock lockWorkspaceForUpdate() {
+        return lockWorkspace(workspaceLock.writeLock());
+    }
+
+    /**
+     * Acquires a workspace lock, giving up if the thread is interrupted meanwhile.
+     */
+    private static Lock lockWorkspace(Lock lock) {
+        try {
+            lock.lockInterruptibly();
+            return lock;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ScmException("Interrupted while waiting for the workspace lock");
+        }
+    }
+
+    /**
+     * Sets the number of threads running asynchronous operations of this connector.
+     */
+    public synchronized void setAsyncThreads(String asyncThreads) {
+        int threads = Integer.parseInt(asyncThreads.trim());
+        if (threads < 1) {
+            throw new IllegalArgumentException("asyncThreads has to be positive");
+        }
+        this.asyncThreads = threads;
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+        }
+    }
+
+    /**
+     * Returns the progress of the running or last fetch of this connector, or {@code null} if it did not fetch yet.
+     */
+    public FetchProgressMonitor getFetchProgress() {
+        return fetchProgress;
+    }
+
+    /**
+     * Limits the bandwidth of fetches to the given number of bytes per second, e.g. {@code 512k}. An empty value
+     * removes the limit.
+     */
+    public void setFetchBandwidthLimit(String fetchBandwidthLimit) {
+        Long limit = WindowCacheProfile.parseSize(fetchBandwidthLimit);
+        this.fetchBandwidthLimit = limit == null ? 0 : limit;
+    }
+
+    /**
+     * Sets the comma separated path prefixes materialized in the workspace. All paths are materialized if neither
+     * includes nor excludes are set.
+     */
+    public synchronized void setSparseInclude(String sparseInclude) {
+        this.sparseInclude = sparseInclude;
+        updateSparseFilter();
+    }
+
+    /**
+     * Sets the comma separated path prefixes left out of the workspace.
+     */
+    public synchronized void setSparseExclude(String sparseExclude) {
+        this.sparseExclude = sparseExclude;
+        updateSparseFilter();
+    }
+
+    private void updateSparseFilter() {
+        // an existing workspace is brought in line with the new filter by the next update
+        sparseFilter = SparseFilter.parse(sparseInclude, sparseExclude);
+    }
+
+    /**
+     * Queues a local ref for the next push batch if pushing is enabled.
+     */
+    private void schedulePush(String localRef, String remoteRef) {
+        PushBatcher batcher = getPushBatcher();
+        if (batcher != null) {
+            batcher.schedule(localRef, remoteRef);
+        }
+    }
+
+    private synchronized PushBatcher getPushBatcher() {
+        if (pushBatcher == null && push) {
+            pushBatcher = new PushBatcher(this, pushWindow);
+        }
+        return pushBatcher;
+    }
+
+    /**
+     * Pushes the commits and tags waiting for the current push window right away. Does nothing if pushing is
+     * disabled.
+     *
+     * @throws ScmException if the remote diverged from the local repository
+     */
+    public void flushPushes() {
+        PushBatcher batcher = getPushBatcher();
+        if (batcher != null) {
+            batcher.flush();
+        }
+    }
+
+    /**
+     * Returns the push statistics, or {@code null} if pushing is disabled.
+     */
+    public PushStatistics getPushStatistics() {
+        PushBatcher batcher = getPushBatcher();
+        return batcher == null ? null : batcher.getStatistics();
+    }
+
+    /**
+     * Enables pushing the commits and tags created by {@code add}, {@code remove} and {@code tagRepo} to the
+     * watched branch of the remote.
+     */
+    public synchronized void setPush(String string) {
+        push = new Boolean(string).booleanValue();
+        resetPushBatcher();
+    }
+
+    /**
+     * Sets the time in milliseconds commits and tags are collected before they are pushed together.
+     */
+    public synchronized void setPushWindow(String pushWindow) {
+        this.pushWindow = Long.parseLong(pushWindow.trim());
+        resetPushBatcher();
+    }
+
+    /**
+     * Drops the current push batcher; its queued refs are pushed in the background.
+     */
+    private void resetPushBatcher() {
+        if (pushBatcher != null) {
+            pushBatcher.close();
+            pushBatcher = null;
+        }
+    }
+
+    /**
+     * Switches to push-style change detection for remotes on a local or network file system. The watched branch of
+     * the remote is checked every {@code checkInterval} milliseconds without fetching, and {@link #update()} only
+     * runs once it changed, or after {@code fallbackInterval} milliseconds without detected changes.
+     */
+    public synchronized void startWatching(RemoteChangeListener listener, long checkInterval, long fallbackInterval) {
+        stopWatching();
+        remoteRefWatcher = RemoteRefWatcher.forService(this, watchBranch, listener, checkInterval, fallbackInterval);
+        remoteRefWatcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (remoteRefWatcher != null) {
+            remoteRefWatcher.stop();
+            remoteRefWatcher = null;
+        }
+    }
+
     public void setSubmodulesHack(String string) {
         submodulesHack = new Boolean(string).booleanValue();
     }
+
+    public void setWarmup(String string) {
+        warmup = new Boolean(string).booleanValue();
+    }
+
+    public boolean isWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Sets the disk budget of the scratch area for {@code get()} and {@code export()} outputs, e.g. {@code 2g}.
+     */
+    public synchronized void setScratchBudget(String scratchBudget) {
+        Long size = WindowCacheProfile.parseSize(scratchBudget);
+        this.scratchBudget = size == null ? DEFAULT_SCRATCH_BUDGET : size;
+        if (scratchArea != null) {
+            scratchArea.setBudget(this.scratchBudget);
+        }
+    }
+
+    /**
+     * Sets the age in minutes after which {@code get()} and {@code export()} outputs are deleted once their model is
+     * no longer referenced.
+     */
+    public synchronized void setScratchMaxAge(String scratchMaxAge) {
+        if (scratchMaxAge == null || scratchMaxAge.trim().length() == 0) {
+            this.scratchMaxAge = DEFAULT_SCRATCH_MAX_AGE;
+        } else {
+            this.scratchMaxAge = Long.parseLong(scratchMaxAge.trim()) * 60 * 1000;
+        }
+        if (scratchArea != null) {
+            scratchArea.setMaxAge(this.scratchMaxAge);
+        }
+    }
+
+    /**
+     * Sets the minutes {@code get()} and {@code export()} outputs are kept after their model is no longer
+     * referenced.
+     */
+    public synchronized void setScratchGracePeriod(String scratchGracePeriod) {
+        if (scratchGracePeriod == null || scratchGracePeriod.trim().length() == 0) {
+            this.scratchGracePeriod = DEFAULT_SCRATCH_GRACE_PERIOD;
+        } else {
+            this.scratchGracePeriod = Long.parseLong(scratchGracePeriod.trim()) * 60 * 1000;
+        }
+        if (scratchArea != null) {
+            scratchArea.setGracePeriod(this.scratchGracePeriod);
+        }
+    }
+
+    /**
+     * Sets the memory budget of the blob content cache of {@code get()}, e.g. {@code 32m}; {@code 0} disables it.
+     */
+    public synchronized void setBlobCacheBudget(String blobCacheBudget) {
+        Long size = WindowCacheProfile.parseSize(blobCacheBudget);
+        this.blobCacheBudget = size == null ? DEFAULT_BLOB_CACHE_BUDGET : size;
+        blobContentCache = null;
+    }
+
+    /**
+     * Sets the size of the largest blob admitted to the blob content cache, e.g. {@code 512k}.
+     */
+    public synchronized void setBlobCacheThreshold(String blobCacheThreshold) {
+        Long size = WindowCacheProfile.parseSize(blobCacheThreshold);
+        this.blobCacheThreshold = size == null ? DEFAULT_BLOB_CACHE_THRESHOLD : size;
+        blobContentCache = null;
+    }
+
+    public void setPackedGitLimit(String packedGitLimit) {
+        windowCacheProfile.setPackedGitLimit(WindowCacheProfile.parseSize(packedGitLimit));
+        WindowCacheTuner.refresh();
+    }
+
+    public void setPackedGitWindowSize(String packedGitWindowSize) {
+        Long size = WindowCacheProfile.parseSize(packedGitWindowSize);
+        windowCacheProfile.setPackedGitWindowSize(size == null ? null : size.intValue());
+        WindowCacheTuner.refresh();
+    }
+
+    public void setDeltaBaseCacheLimit(String deltaBaseCacheLimit) {
+        Long size = WindowCacheProfile.parseSize(deltaBaseCacheLimit);
+        windowCacheProfile.setDeltaBaseCacheLimit(size == null ? null : size.intValue());
+        WindowCacheTuner.refresh();
+    }
+
+    public void setPackedGitMMAP(String packedGitMMAP) {
+        if (packedGitMMAP == null || packedGitMMAP.trim().length() == 0) {
+            windowCacheProfile.setPackedGitMMAP(null);
+        } else {
+            windowCacheProfile.setPackedGitMMAP(new Boolean(packedGitMMAP));
+        }
+        WindowCacheTuner.refresh();
+    }
+
+    /**
+     * An update in progress that later callers wait for instead of starting their own.
+     */
+    private static final class UpdateFlight {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile AnyObjectId newHead;
+        private volatile RuntimeException error;
+
+        private void complete(AnyObjectId head) {
+            newHead = head;
+            done.countDown();
+        }
+
+        private void fail(RuntimeException e) {
+            error = e;
+            done.countDown();
+        }
+
+        private void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ScmException("Interrupted while waiting for the update in progress");
+            }
+            if (error != null) {
+                throw new ScmException(error);
+            }
+        }
+    }
 }
@@ -43,6 +43,66 @@ public class GitServiceInstanceFactory extends AbstractConnectorInstanceFactory<
         if (attributes.containsKey("submodulesHack")) {
             instance.setSubmodulesHack(attributes.get("submodulesHack"));
         }
+        if (attributes.containsKey("branches")) {
+            instance.setBranches(attributes.get("branches"));
+        }
+        if (attributes.containsKey("blobStore")) {
+            instance.setBlobStore(attributes.get("blobStore"));
+        }
+        if (attributes.containsKey("checkoutThreads")) {
+            instance.setCheckoutThreads(attributes.get("checkoutThreads"));
+        }
+        if (attributes.containsKey("sparseInclude")) {
+            instance.setSparseInclude(attributes.get("sparseInclude"));
+        }
+        if (attributes.containsKey("sparseExclude")) {
+            instance.setSparseExclude(attributes.get("sparseExclude"));
+        }
+        if (attributes.containsKey("fetchBandwidthLimit")) {
+            instance.setFetchBandwidthLimit(attributes.get("fetchBandwidthLimit"));
+        }
+        if (attributes.containsKey("pushWindow")) {
+            instance.setPushWindow(attributes.get("pushWindow"));
+        }
+        if (attributes.containsKey("push")) {
+            instance.setPush(attributes.get("push"));
+        }
+        if (attributes.containsKey("asyncThreads")) {
+            instance.setAsyncThreads(attributes.get("asyncThreads"));
+        }
+        if (attributes.containsKey("blobCacheBudget")) {
+            instance.setBlobCacheBudget(attributes.get("blobCacheBudget"));
+        }
+        if (attributes.containsKey("blobCacheThreshold")) {
+            instance.setBlobCacheThreshold(attributes.get("blobCacheThreshold"));
+        }
+        if (attributes.containsKey("scratchBudget")) {
+            instance.setScratchBudget(attributes.get("scratchBudget"));
+        }
+        if (attributes.containsKey("scratchMaxAge")) {
+            instance.setScratchMaxAge(attributes.get("scratchMaxAge"));
+        }
+        if (attributes.containsKey("scratchGracePeriod")) {
+            instance.setScratchGracePeriod(attributes.get("scratchGracePeriod"));
+        }
+        if (attributes.containsKey("packedGitLimit")) {
+            instance.setPackedGitLimit(attributes.get("packedGitLimit"));
+        }
+        if (attributes.containsKey("packedGitWindowSize")) {
+            instance.setPackedGitWindowSize(attributes.get("packedGitWindowSize"));
+        }
+        if (attributes.containsKey("deltaBaseCacheLimit")) {
+            instance.setDeltaBaseCacheLimit(attributes.get("deltaBaseCacheLimit"));
+        }
+        if (attributes.containsKey("packedGitMMAP")) {
+            instance.setPackedGitMMAP(attributes.get("packedGitMMAP"));
+        }
+        if (attributes.containsKey("warmup")) {
+            instance.setWarmup(attributes.get("warmup"));
+        }
+        if (instance.isWarmup()) {
+            instance.warmUpOnCreation();
+        }
     }
 
 }
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.CheckoutConflictException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks a tree out into an empty work tree using several threads.
+ * <p>
+ * Like a checkout that fails on conflicts, nothing is written if the work tree already holds a file or directory in
+ * the way of a path of the tree, unless it is a file with the same content.
+ * <p>
+ * The tree is walked once to collect the index entries. The files are then split into batches that the worker
+ * threads inflate and write, each with its own object reader, recording the size and modification time of the
+ * written files in their entries. Finally the index is written from all entries in a single step, so it never
+ * refers to files that were not written. Paths not matched by an optional {@link SparseFilter} are kept in the
+ * index, marked assume-valid, but not written.
+ */
+public class ParallelCheckout {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelCheckout.class);
+    private static final int BATCH_SIZE = 128;
+
+    private final Repository repository;
+    private final SparseFilter filter;
+    private final int threads;
+
+    public ParallelCheckout(Repository repository, SparseFilter filter, int threads) {
+        this.repository = repository;
+        this.filter = filter;
+        this.threads = Math.max(1, threads);
+    }
+
+    public CheckoutTimings checkout(AnyObjectId tree) throws IOException {
+        long start = System.currentTimeMillis();
+        List<DirCacheEntry> entries = new ArrayList<DirCacheEntry>();
+        List<DirCacheEntry> toWrite = new ArrayList<DirCacheEntry>();
+        TreeWalk walk = new TreeWalk(repository);
+        try {
+            walk.setRecursive(true);
+            walk.addTree(tree);
+            while (walk.next()) {
+                DirCacheEntry entry = new DirCacheEntry(walk.getPathString());
+                entry.setFileMode(walk.getFileMode(0));
+                entry.setObjectId(walk.getObjectId(0));
+                if (filter == null || filter.matches(entry.getPathString())) {
+                    toWrite.add(entry);
+                } else {
+                    entry.setAssumeValid(true);
+                }
+                entries.add(entry);
+            }
+        } finally {
+            walk.release();
+        }
+        checkConflicts(toWrite);
+        long scanned = System.currentTimeMillis();
+
+        long bytes = write(toWrite);
+        long written = System.currentTimeMillis();
+
+        DirCache dirCache = repository.lockDirCache();
+        try {
+            DirCacheBuilder builder = dirCache.builder();
+            for (DirCacheEntry entry : entries) {
+                builder.add(entry);
+            }
+            builder.finish();
+            dirCache.write();
+            if (!dirCache.commit()) {
+                throw new IOException("Cannot write index of " + repository.getDirectory());
+            }
+        } finally {
+            dirCache.unlock();
+        }
+        long indexed = System.currentTimeMillis();
+        CheckoutTimings timings = new CheckoutTimings(scanned - start, written - scanned, indexed - written,
+            toWrite.size(), bytes, threads);
+        LOGGER.info("Checked out {}", timings);
+        return timings;
+    }
+
+    /**
+     * Fails if an existing file or directory of the work tree would be overwritten by one of {@code entries}.
+     */
+    private void checkConflicts(List<DirCacheEntry> entries) throws IOException {
+        File workTree = repository.getWorkTree();
+        String[] existing = workTree.list();
+        if (existing == null || existing.length == 0
+                || existing.length == 1 && existing[0].equals(Constants.DOT_GIT)) {
+            return;
+        }
+        List<String> conflicts = new ArrayList<String>();
+        ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+        for (DirCacheEntry entry : entries) {
+            File file = new File(workTree, entry.getPathString());
+            if (file.isDirectory() || hasFileParent(workTree, file)) {
+                conflicts.add(entry.getPathString());
+            } else if (file.isFile()) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    if (!formatter.idFor(Constants.OBJ_BLOB, file.length(), in).equals(entry.getObjectId())) {
+                        conflicts.add(entry.getPathString());
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new CheckoutConflictException(conflicts.toArray(new String[conflicts.size()]));
+        }
+    }
+
+    private static boolean hasFileParent(File workTree, File file) {
+        for (File parent = file.getParentFile(); !parent.equals(workTree); parent = parent.getParentFile()) {
+            if (parent.isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long write(List<DirCacheEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "git-checkout-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < entries.size(); i += BATCH_SIZE) {
+                futures.add(executor.submit(new WriteTask(entries.subList(i, Math.min(i + BATCH_SIZE,
+                    entries.size())))));
+            }
+            long bytes = 0;
+            for (Future<Long> future : futures) {
+                bytes += future.get();
+            }
+            return bytes;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Checkout interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private final class WriteTask implements Callable<Long> {
+        private final List<DirCacheEntry> entries;
+
+        private WriteTask(List<DirCacheEntry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public Long call() throws IOException {
+            File workTree = repository.getWorkTree();
+            ObjectReader reader = repository.newObjectReader();
+            long bytes = 0;
+            try {
+                for (DirCacheEntry entry : entries) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Checkout interrupted");
+                    }
+                    File file = new File(workTree, entry.getPathString());
+                    FileMode mode = entry.getFileMode();
+                    SparseCheckout.writeFile(repository, reader, file, mode, entry.getObjectId());
+                    if (mode != FileMode.GITLINK) {
+                        entry.setLength(file.length());
+                        entry.setLastModified(file.lastModified());
+                        bytes += file.length();
+                    }
+                }
+            } finally {
+                reader.release();
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the polls of an existing repository that were skipped by the remote ref pre-check and those that ran a
+ * full fetch and merge.
+ */
+public class PollStatistics {
+    private final AtomicLong skippedPolls = new AtomicLong();
+    private final AtomicLong fullPolls = new AtomicLong();
+
+    void recordSkippedPoll() {
+        skippedPolls.incrementAndGet();
+    }
+
+    void recordFullPoll() {
+        fullPolls.incrementAndGet();
+    }
+
+    public long getSkippedPolls() {
+        return skippedPolls.get();
+    }
+
+    public long getFullPolls() {
+        return fullPolls.get();
+    }
+
+    /**
+     * Ratio of skipped to full polls, or {@code 0} if no full poll happened yet.
+     */
+    public double getSkippedToFullRatio() {
+        long full = fullPolls.get();
+        if (full == 0) {
+            return 0;
+        }
+        return (double) skippedPolls.get() / full;
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.Transport;
+import org.openengsb.domain.scm.ScmException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes the commits and tags created by a connector to its remote in batches.
+ * <p>
+ * Refs queued within {@code window} milliseconds of the first one are pushed together over a single transport
+ * session. A ref rejected as non-fast-forward usually means the local repository did not know the remote tip yet;
+ * the remote is fetched then, and the push is retried if the local ref is still a fast-forward of the remote one.
+ * Refs that diverged from the remote are never forced: the batch fails, and the diverged refs are parked until they
+ * are queued again by a local update instead of polling the remote for them. Refs of a batch that failed otherwise are
+ * queued again, unless newer updates of the same remote refs replaced them meanwhile, and retried with a growing
+ * delay.
+ */
+public class PushBatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PushBatcher.class);
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+
+    private final GitServiceImpl service;
+    private final long window;
+    private final ScheduledExecutorService scheduler;
+    private final PushStatistics statistics = new PushStatistics();
+    private final Object pushLock = new Object();
+
+    private final Map<String, String> pending = new LinkedHashMap<String, String>();
+    private final Map<String, String> diverged = new LinkedHashMap<String, String>();
+    private long queuedSince;
+    private ScheduledFuture<?> scheduledFlush;
+    private int consecutiveFailures;
+
+    public PushBatcher(final GitServiceImpl service, long window) {
+        this.service = service;
+        this.window = window;
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "git-push-" + service.getInstanceId());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queues {@code localRef} to be pushed to {@code remoteRef} with the next batch.
+     */
+    public synchronized void schedule(String localRef, String remoteRef) {
+        if (pending.isEmpty()) {
+            queuedSince = System.currentTimeMillis();
+        }
+        pending.put(remoteRef, localRef);
+        diverged.remove(remoteRef);
+        scheduleFlush(window);
+    }
+
+    /**
+     * Pushes all queued refs now.
+     *
+     * @throws ScmException if the refs could not be pushed
+     */
+    public void flush() {
+        Map<String, String> batch;
+        long since;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<String, String>(pending);
+            since = queuedSince;
+            pending.clear();
+        }
+        synchronized (pushLock) {
+            try {
+                push(batch, since);
+                synchronized (this) {
+                    consecutiveFailures = 0;
+                }
+            } catch (DivergedException e) {
+                // the other refs of the batch were pushed, retrying the diverged ones cannot succeed
+                statistics.recordFailure(e);
+                statistics.recordDiverged(e.refs.size());
+                park(e.refs);
+                throw e;
+            } catch (IOException e) {
+                statistics.recordFailure(e);
+                requeue(batch, since);
+                throw new ScmException(e);
+            } catch (RuntimeException e) {
+                statistics.recordFailure(e);
+                requeue(batch, since);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Pushes the queued refs in the background and stops the batcher afterwards.
+     */
+    public void close() {
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Final push of connector {} failed", service.getInstanceId(), e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Push batcher of connector {} is already stopped", service.getInstanceId());
+        }
+        scheduler.shutdown();
+    }
+
+    public PushStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the remote refs whose local refs diverged from them, keyed by remote ref. They are not pushed again
+     * until they are queued by a new local update.
+     */
+    public synchronized Map<String, String> getDivergedRefs() {
+        return new LinkedHashMap<String, String>(diverged);
+    }
+
+    private synchronized void park(Map<String, String> refs) {
+        for (Map.Entry<String, String> entry : refs.entrySet()) {
+            if (!pending.containsKey(entry.getKey())) {
+                diverged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        LOGGER.warn("Remote refs {} of connector {} diverged, they are not pushed until they are updated locally",
+            refs.keySet(), service.getInstanceId());
+    }
+
+    /**
+     * Queues the refs of a failed batch again, keeping newer updates of the same remote refs, and schedules a retry.
+     */
+    private synchronized void requeue(Map<String, String> batch, long since) {
+        Map<String, String> merged = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry : batch.entrySet()) {
+            if (!pending.containsKey(entry.getKey())) {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        merged.putAll(pending);
+        queuedSince = pending.isEmpty() ? since : Math.min(since, queuedSince);
+        pending.clear();
+        pending.putAll(merged);
+        consecutiveFailures++;
+        long delay = Math.min(MAX_RETRY_DELAY, window << Math.min(consecutiveFailures, 16));
+        LOGGER.debug("Retrying push of connector {} in {} ms", service.getInstanceId(), delay);
+        scheduleFlush(delay);
+    }
+
+    private synchronized void scheduleFlush(long delay) {
+        if (scheduledFlush != null) {
+            return;
+        }
+        try {
+            scheduledFlush = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Pushing connector {} failed", service.getInstanceId(), e);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Push batcher of connector {} is stopped, refs {} were not pushed", service.getInstanceId(),
+                pending.keySet());
+        }
+    }
+
+    private void push(Map<String, String> batch, long since) throws IOException {
+        long start = System.currentTimeMillis();
+        int refs = batch.size();
+        Map<String, String> remaining = batch;
+        for (int attempt = 1;; attempt++) {
+            LOGGER.debug("Pushing {} refs of connector {}, attempt {}", new Object[]{ remaining.size(),
+                service.getInstanceId(), attempt });
+            Map<String, String> rejected = pushOnce(remaining);
+            if (rejected.isEmpty()) {
+                break;
+            }
+            if (attempt == MAX_ATTEMPTS || !isFastForwardAfterFetch(rejected)) {
+                throw new DivergedException(rejected);
+            }
+            statistics.recordRetry();
+            remaining = rejected;
+        }
+        long end = System.currentTimeMillis();
+        statistics.recordPush(refs, end - since, end - start);
+    }
+
+    /**
+     * Pushes the refs over one transport session and returns those rejected as non-fast-forward.
+     */
+    private Map<String, String> pushOnce(Map<String, String> refs) throws IOException {
+        Repository repository = service.getRepository();
+        List<RemoteRefUpdate> updates = new ArrayList<RemoteRefUpdate>(refs.size());
+        for (Map.Entry<String, String> entry : refs.entrySet()) {
+            updates.add(new RemoteRefUpdate(repository, entry.getValue(), entry.getKey(), false,
+                trackingRef(entry.getKey()), null));
+        }
+        Map<String, String> rejected = new LinkedHashMap<String, String>();
+        Transport transport = service.openTransport();
+        try {
+            PushResult result = transport.push(NullProgressMonitor.INSTANCE, updates);
+            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                switch (update.getStatus()) {
+                    case OK:
+                    case UP_TO_DATE:
+                        break;
+                    case REJECTED_NONFASTFORWARD:
+                        rejected.put(update.getRemoteName(), update.getSrcRef());
+                        break;
+                    default:
+                        throw new ScmException("Pushing " + update.getSrcRef() + " to " + update.getRemoteName()
+                                + " failed with " + update.getStatus() + ": " + update.getMessage());
+                }
+            }
+        } finally {
+            transport.close();
+        }
+        return rejected;
+    }
+
+    /**
+     * Fetches the remote and checks that every rejected local ref still contains the remote one.
+     */
+    private boolean isFastForwardAfterFetch(Map<String, String> rejected) throws IOException {
+        Repository repository = service.getRepository();
+        // fetching updates the tracking refs, which must not race with an update of the workspace
+        Lock lock = service.lockWorkspaceForUpdate();
+        try {
+            Transport transport = service.openTransport();
+            try {
+                transport.fetch(NullProgressMonitor.INSTANCE, null);
+            } finally {
+                transport.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+        RevWalk walk = new RevWalk(repository);
+        try {
+            for (Map.Entry<String, String> entry : rejected.entrySet()) {
+                String tracking = trackingRef(entry.getKey());
+                Ref remote = tracking == null ? null : repository.getRef(tracking);
+                ObjectId local = repository.resolve(entry.getValue());
+                if (remote == null || local == null
+                        || !walk.isMergedInto(walk.parseCommit(remote.getObjectId()), walk.parseCommit(local))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            walk.release();
+        }
+    }
+
+    private static String trackingRef(String remoteRef) {
+        if (remoteRef.startsWith(Constants.R_HEADS)) {
+            return Constants.R_REMOTES + "origin/" + remoteRef.substring(Constants.R_HEADS.length());
+        }
+        return null;
+    }
+
+    /**
+     * Thrown when refs were still rejected after {@link #MAX_ATTEMPTS} or the local refs do not contain the remote
+     * ones.
+     */
+    private static final class DivergedException extends ScmException {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> refs;
+
+        private DivergedException(Map<String, String> refs) {
+            super("Remote refs " + refs.keySet() + " diverged from the local ones");
+            this.refs = refs;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the pushes of a connector and measures how long local commits and tags waited until they reached the
+ * remote.
+ */
+public class PushStatistics {
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong pushedRefs = new AtomicLong();
+    private final AtomicLong failedPushes = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong divergedRefs = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong lastDuration = new AtomicLong();
+    private volatile String lastFailure;
+    private volatile long lastFailureTime;
+
+    void recordPush(int refs, long latency, long duration) {
+        pushes.incrementAndGet();
+        pushedRefs.addAndGet(refs);
+        totalLatency.addAndGet(latency);
+        lastDuration.set(duration);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+
+    void recordFailure(Exception e) {
+        failedPushes.incrementAndGet();
+        lastFailure = e.getMessage();
+        lastFailureTime = System.currentTimeMillis();
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordDiverged(int refs) {
+        divergedRefs.addAndGet(refs);
+    }
+
+    public long getPushes() {
+        return pushes.get();
+    }
+
+    public long getPushedRefs() {
+        return pushedRefs.get();
+    }
+
+    public long getFailedPushes() {
+        return failedPushes.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Number of refs given up because they diverged from the remote; they are pushed again once updated locally.
+     */
+    public long getDivergedRefs() {
+        return divergedRefs.get();
+    }
+
+    /**
+     * Average time in milliseconds from queueing the first ref of a batch until the batch was pushed, or {@code 0}
+     * if nothing was pushed yet.
+     */
+    public long getAverageLatency() {
+        long count = pushes.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    /**
+     * Time in milliseconds the transport session of the last successful push took, including retries.
+     */
+    public long getLastDuration() {
+        return lastDuration.get();
+    }
+
+    /**
+     * Message of the last failed push, or {@code null} if no push failed yet. The refs of a failed push stay queued,
+     * except for diverged ones.
+     */
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Time in milliseconds since the epoch of the last failed push, or {@code 0} if no push failed yet.
+     */
+    public long getLastFailureTime() {
+        return lastFailureTime;
+    }
+}
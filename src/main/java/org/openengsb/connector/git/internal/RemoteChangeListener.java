@@ -0,0 +1,32 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.util.List;
+
+import org.openengsb.domain.scm.CommitRef;
+
+/**
+ * Notified by a {@link RemoteRefWatcher} with the result of the update triggered by a change of the watched branch.
+ */
+public interface RemoteChangeListener {
+
+    void remoteChanged(List<CommitRef> commits);
+
+    void updateFailed(Exception e);
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.transport.URIish;
+import org.openengsb.domain.scm.CommitRef;
+import org.openengsb.domain.scm.ScmException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects changes of the watched branch of a remote on a local or network file system and runs
+ * {@link GitServiceImpl#update()} only when the branch actually moved.
+ * <p>
+ * Each check only stats the loose ref of the branch and {@code packed-refs}; the remote is opened just when one of
+ * them changed. Since some network file systems report stale modification times, a full update is forced whenever
+ * no change was detected for {@code fallbackInterval} milliseconds.
+ */
+public class RemoteRefWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteRefWatcher.class);
+
+    private final GitServiceImpl service;
+    private final File remoteGitDir;
+    private final String branch;
+    private final RemoteChangeListener listener;
+    private final long checkInterval;
+    private final long fallbackInterval;
+
+    private ScheduledExecutorService scheduler;
+    private String lastStamp;
+    private ObjectId lastBranchId;
+    private long lastUpdate;
+
+    public RemoteRefWatcher(GitServiceImpl service, File remoteGitDir, String branch, RemoteChangeListener listener,
+            long checkInterval, long fallbackInterval) {
+        this.service = service;
+        this.remoteGitDir = remoteGitDir;
+        this.branch = branch;
+        this.listener = listener;
+        this.checkInterval = checkInterval;
+        this.fallbackInterval = fallbackInterval;
+    }
+
+    /**
+     * Resolves the git directory of a {@code file:} remote, or returns {@code null} if the remote is not on a file
+     * system.
+     */
+    public static File resolveRemoteGitDir(String remoteLocation) {
+        if (remoteLocation == null) {
+            return null;
+        }
+        try {
+            URIish uri = new URIish(remoteLocation);
+            if (uri.getScheme() != null && !"file".equals(uri.getScheme())) {
+                return null;
+            }
+            if (uri.getHost() != null) {
+                return null;
+            }
+            File directory = new File(uri.getPath());
+            File gitDir = new File(directory, Constants.DOT_GIT);
+            return gitDir.isDirectory() ? gitDir : directory;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        LOGGER.debug("Watching branch {} of {}", branch, remoteGitDir);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "git-watch-" + service.getInstanceId());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        lastUpdate = System.currentTimeMillis();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, 0, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    void check() {
+        try {
+            String stamp = stamp(new File(remoteGitDir, Constants.R_HEADS + branch))
+                    + stamp(new File(remoteGitDir, Constants.PACKED_REFS));
+            boolean fallback = System.currentTimeMillis() - lastUpdate >= fallbackInterval;
+            if (stamp.equals(lastStamp) && !fallback) {
+                return;
+            }
+            ObjectId branchId = readBranch();
+            if (branchId != null && branchId.equals(lastBranchId) && !fallback) {
+                lastStamp = stamp;
+                return;
+            }
+            LOGGER.debug("Branch {} of {} changed to {}, updating", new Object[]{ branch, remoteGitDir,
+                branchId == null ? null : branchId.name() });
+            lastUpdate = System.currentTimeMillis();
+            List<CommitRef> commits = service.update();
+            // the change only counts as seen once the update succeeded, a failed one is retried with the next check
+            lastStamp = stamp;
+            lastBranchId = branchId;
+            if (commits != null && !commits.isEmpty()) {
+                listener.remoteChanged(commits);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Checking branch {} of {} failed", new Object[]{ branch, remoteGitDir, e });
+            listener.updateFailed(e);
+        }
+    }
+
+    private ObjectId readBranch() throws IOException {
+        FileRepository remote = new FileRepository(remoteGitDir);
+        try {
+            Ref ref = remote.getRef(Constants.R_HEADS + branch);
+            return ref == null ? null : ref.getObjectId();
+        } finally {
+            remote.close();
+        }
+    }
+
+    private static String stamp(File file) {
+        return file.lastModified() + ":" + file.length() + ";";
+    }
+
+    /**
+     * Creates a watcher for the remote of {@code service}, failing if the remote is not on a file system.
+     */
+    static RemoteRefWatcher forService(GitServiceImpl service, String branch, RemoteChangeListener listener,
+            long checkInterval, long fallbackInterval) {
+        File gitDir = resolveRemoteGitDir(service.getRemoteLocation());
+        if (gitDir == null || !gitDir.isDirectory()) {
+            throw new ScmException("Remote " + service.getRemoteLocation() + " is not a local repository.");
+        }
+        return new RemoteRefWatcher(service, gitDir, branch, listener, checkInterval, fallbackInterval);
+    }
+}
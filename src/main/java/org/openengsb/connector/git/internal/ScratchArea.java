@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.openengsb.core.api.model.OpenEngSBFileModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Managed scratch directory for the files and directories handed out by {@code get()} and {@code export()}.
+ * <p>
+ * Every output lives in its own directory below {@code root} and is tracked together with the
+ * {@link OpenEngSBFileModel} returned for it. A caller can rely on an output as long as its model is reachable, and
+ * for {@code gracePeriod} after the model was garbage collected, since callers often keep only the file. After that
+ * the output is deleted once it is older than {@code maxAge}, or earlier, oldest first, while the scratch area exceeds
+ * its disk budget. Outputs still in use are never deleted, so the budget is a soft limit for them. Leftovers of a
+ * previous run are removed when the scratch area is created.
+ */
+public class ScratchArea {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScratchArea.class);
+
+    private final File root;
+    private volatile long budget;
+    private volatile long maxAge;
+    private volatile long gracePeriod;
+    private final AtomicLong counter = new AtomicLong();
+    private final ReferenceQueue<OpenEngSBFileModel> collected = new ReferenceQueue<OpenEngSBFileModel>();
+    private final Map<File, Entry> entries = new LinkedHashMap<File, Entry>();
+    private long usage;
+
+    public ScratchArea(File root, long budget, long maxAge, long gracePeriod) throws IOException {
+        this.root = root;
+        this.budget = budget;
+        this.maxAge = maxAge;
+        this.gracePeriod = gracePeriod;
+        if (root.isDirectory()) {
+            LOGGER.debug("Removing orphaned scratch files in {}", root);
+            FileUtils.cleanDirectory(root);
+        } else if (!root.mkdirs()) {
+            throw new IOException("Cannot create scratch directory " + root);
+        }
+    }
+
+    /**
+     * Creates a new empty directory in the scratch area.
+     */
+    public File createDirectory(String prefix) throws IOException {
+        cleanup();
+        File directory = new File(root, prefix + "-" + counter.incrementAndGet());
+        if (!directory.mkdir()) {
+            throw new IOException("Cannot create scratch directory " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Returns a not yet existing file with exactly the given name in a new scratch directory.
+     */
+    public File createFile(String name) throws IOException {
+        return new File(createDirectory("file"), name);
+    }
+
+    /**
+     * Starts tracking an output created by {@link #createDirectory(String)} or {@link #createFile(String)} and
+     * returns the model to hand out for it.
+     */
+    public OpenEngSBFileModel track(File file) {
+        File directory = file.getParentFile().equals(root) ? file : file.getParentFile();
+        OpenEngSBFileModel model = new OpenEngSBFileModel();
+        model.setFile(file);
+        long size = directory.isDirectory() ? FileUtils.sizeOfDirectory(directory) : directory.length();
+        synchronized (this) {
+            entries.put(directory, new Entry(model, collected, directory, size));
+            usage += size;
+        }
+        cleanup();
+        return model;
+    }
+
+    /**
+     * Removes released outputs past their grace period once they are expired, and the oldest of them until the area
+     * fits its budget again.
+     */
+    public synchronized void cleanup() {
+        for (Reference<? extends OpenEngSBFileModel> reference = collected.poll(); reference != null;
+                reference = collected.poll()) {
+            Entry entry = (Entry) reference;
+            LOGGER.debug("Model of {} was collected", entry.directory);
+            entry.released = System.currentTimeMillis();
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.released == 0 || now - entry.released < gracePeriod) {
+                continue;
+            }
+            if (now - entry.created < maxAge && usage <= budget) {
+                continue;
+            }
+            LOGGER.debug("Evicting scratch output {} of {} bytes", entry.directory, entry.size);
+            iterator.remove();
+            delete(entry);
+        }
+    }
+
+    /**
+     * Changes the disk budget; takes effect with the next cleanup.
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Changes the age after which released outputs are deleted; takes effect with the next cleanup.
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Changes how long outputs are kept after their model was collected; takes effect with the next cleanup.
+     */
+    public void setGracePeriod(long gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+    public synchronized long getUsage() {
+        return usage;
+    }
+
+    public synchronized int getTrackedCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns whether the model of any tracked output was garbage collected.
+     */
+    synchronized boolean hasReleased() {
+        for (Entry entry : entries.values()) {
+            if (entry.released != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    private void delete(Entry entry) {
+        usage -= entry.size;
+        entry.clear();
+        FileUtils.deleteQuietly(entry.directory);
+    }
+
+    private static final class Entry extends WeakReference<OpenEngSBFileModel> {
+        private final File directory;
+        private final long size;
+        private final long created = System.currentTimeMillis();
+        private long released;
+
+        private Entry(OpenEngSBFileModel model, ReferenceQueue<OpenEngSBFileModel> queue, File directory,
+                long size) {
+            super(model, queue);
+            this.directory = directory;
+            this.size = size;
+        }
+    }
+}
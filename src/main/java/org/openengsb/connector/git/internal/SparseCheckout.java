@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks out a commit into a sparse workspace.
+ * <p>
+ * The index is always rebuilt from the complete tree so that commits created through the index keep the paths
+ * outside the workspace. Only the paths matched by the {@link SparseFilter} are written to the work tree; the others
+ * are marked assume-valid in the index so that they are not reported as deleted. When moving from one commit to
+ * another only the matching paths that changed are written or deleted.
+ */
+public class SparseCheckout {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SparseCheckout.class);
+
+    private final Repository repository;
+    private final SparseFilter filter;
+
+    public SparseCheckout(Repository repository, SparseFilter filter) {
+        this.repository = repository;
+        this.filter = filter;
+    }
+
+    /**
+     * Replaces the index and the matching part of the work tree by {@code target}.
+     *
+     * @param current the commit currently checked out, or {@code null} to rewrite all matching paths and remove the
+     *        paths no longer matching, e.g. after the filter changed
+     */
+    public void checkout(RevCommit current, RevCommit target) throws IOException {
+        File workTree = repository.getWorkTree();
+        DirCache dirCache = repository.lockDirCache();
+        ObjectReader reader = repository.newObjectReader();
+        TreeWalk walk = new TreeWalk(reader);
+        int written = 0;
+        int deleted = 0;
+        try {
+            DirCacheBuilder builder = dirCache.builder();
+            walk.setRecursive(true);
+            walk.addTree(target.getTree());
+            if (current == null) {
+                walk.addTree(new EmptyTreeIterator());
+            } else {
+                walk.addTree(current.getTree());
+            }
+            while (walk.next()) {
+                String path = walk.getPathString();
+                FileMode mode = walk.getFileMode(0);
+                File file = new File(workTree, path);
+                boolean matches = filter.matches(path);
+                if (mode == FileMode.MISSING) {
+                    if (matches && file.delete()) {
+                        deleted++;
+                        deleteEmptyParents(file.getParentFile(), workTree);
+                    }
+                    continue;
+                }
+                ObjectId id = walk.getObjectId(0);
+                DirCacheEntry entry = new DirCacheEntry(path);
+                entry.setFileMode(mode);
+                entry.setObjectId(id);
+                if (matches) {
+                    if (current == null || !id.equals(walk.getObjectId(1)) || !file.exists()) {
+                        writeFile(repository, reader, file, mode, id);
+                        written++;
+                    }
+                    entry.setLength(file.length());
+                    entry.setLastModified(file.lastModified());
+                } else {
+                    entry.setAssumeValid(true);
+                    if (current == null && file.isFile() && file.delete()) {
+                        deleted++;
+                        deleteEmptyParents(file.getParentFile(), workTree);
+                    }
+                }
+                builder.add(entry);
+            }
+            builder.finish();
+            dirCache.write();
+            if (!dirCache.commit()) {
+                throw new IOException("Cannot write index of " + repository.getDirectory());
+            }
+            dirCache = null;
+        } finally {
+            walk.release();
+            if (dirCache != null) {
+                dirCache.unlock();
+            }
+        }
+        LOGGER.debug("Sparse checkout of {} ({}) wrote {} and deleted {} files", new Object[]{ target.name(),
+            filter, written, deleted });
+    }
+
+    /**
+     * Writes the content of a blob, or an empty directory for a submodule, to the work tree.
+     */
+    static void writeFile(Repository repository, ObjectReader reader, File file, FileMode mode, ObjectId id)
+        throws IOException {
+        if (mode == FileMode.GITLINK) {
+            file.mkdirs();
+            return;
+        }
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            reader.open(id).copyTo(out);
+        } finally {
+            out.close();
+        }
+        if (mode == FileMode.EXECUTABLE_FILE && repository.getFS().supportsExecute()) {
+            repository.getFS().setExecute(file, true);
+        }
+    }
+
+    private static void deleteEmptyParents(File directory, File workTree) {
+        File current = directory;
+        while (current != null && !current.equals(workTree) && current.delete()) {
+            current = current.getParentFile();
+        }
+    }
+}
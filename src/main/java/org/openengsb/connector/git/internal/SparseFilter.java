@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Selects the paths materialized in a sparse workspace by include and exclude path prefixes. A path matches if it
+ * lies below one of the include prefixes, or no include prefixes are given, and below none of the exclude prefixes.
+ */
+public class SparseFilter {
+    private final List<String> includes;
+    private final List<String> excludes;
+
+    public SparseFilter(List<String> includes, List<String> excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Creates a filter from comma separated prefix lists, or returns {@code null} if both lists are empty.
+     */
+    public static SparseFilter parse(String includes, String excludes) {
+        List<String> includeList = parsePrefixes(includes);
+        List<String> excludeList = parsePrefixes(excludes);
+        if (includeList.isEmpty() && excludeList.isEmpty()) {
+            return null;
+        }
+        return new SparseFilter(includeList, excludeList);
+    }
+
+    public boolean matches(String path) {
+        for (String exclude : excludes) {
+            if (isBelow(path, exclude)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (String include : includes) {
+            if (isBelow(path, include)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBelow(String path, String prefix) {
+        return path.equals(prefix) || path.startsWith(prefix) && path.charAt(prefix.length()) == '/';
+    }
+
+    private static List<String> parsePrefixes(String value) {
+        if (value == null || value.trim().length() == 0) {
+            return Collections.emptyList();
+        }
+        List<String> prefixes = new ArrayList<String>();
+        for (String prefix : value.split(",")) {
+            String normalized = prefix.trim().replace('\\', '/');
+            while (normalized.startsWith("/")) {
+                normalized = normalized.substring(1);
+            }
+            while (normalized.endsWith("/")) {
+                normalized = normalized.substring(0, normalized.length() - 1);
+            }
+            if (normalized.length() > 0) {
+                prefixes.add(normalized);
+            }
+        }
+        return prefixes;
+    }
+
+    @Override
+    public String toString() {
+        return "include " + includes + ", exclude " + excludes;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index mapping tag names to their tag objects and the commits they peel to. The index is built once from
+ * the ref database; later refreshes only peel tags whose ref target changed.
+ */
+public class TagIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TagIndex.class);
+
+    private final Repository repository;
+    private final Map<String, Entry> byName = new TreeMap<String, Entry>();
+    // several lightweight tags of the same commit share their tag id
+    private final Map<ObjectId, Map<String, Entry>> byTagId = new HashMap<ObjectId, Map<String, Entry>>();
+
+    public TagIndex(Repository repository) throws IOException {
+        this.repository = repository;
+        refresh();
+    }
+
+    /**
+     * Synchronizes the index with the tags currently in the ref database.
+     */
+    public synchronized void refresh() throws IOException {
+        Map<String, Ref> refs = repository.getRefDatabase().getRefs(Constants.R_TAGS);
+        RevWalk walk = new RevWalk(repository);
+        try {
+            for (Entry entry : new ArrayList<Entry>(byName.values())) {
+                if (!refs.containsKey(entry.name)) {
+                    remove(entry);
+                }
+            }
+            int peeled = 0;
+            for (Map.Entry<String, Ref> ref : refs.entrySet()) {
+                ObjectId tagId = ref.getValue().getObjectId();
+                Entry existing = byName.get(ref.getKey());
+                if (existing != null && existing.tagId.equals(tagId)) {
+                    continue;
+                }
+                if (existing != null) {
+                    remove(existing);
+                }
+                add(new Entry(ref.getKey(), tagId, peel(walk, tagId)));
+                peeled++;
+            }
+            LOGGER.debug("Tag index holds {} tags, {} peeled during refresh", byName.size(), peeled);
+        } finally {
+            walk.release();
+        }
+    }
+
+    /**
+     * Adds a tag that was just created by the connector without rescanning the ref database.
+     */
+    public synchronized void put(RevTag tag) {
+        Entry existing = byName.get(tag.getTagName());
+        if (existing != null) {
+            remove(existing);
+        }
+        RevObject object = tag.getObject();
+        ObjectId commitId = object instanceof RevCommit ? object.copy() : null;
+        add(new Entry(tag.getTagName(), tag.copy(), commitId));
+    }
+
+    public synchronized Entry getByName(String tagName) {
+        return byName.get(tagName);
+    }
+
+    /**
+     * Returns the tag with the given ref target, the first by name if several tags point to the same object.
+     */
+    public synchronized Entry getByTagId(AnyObjectId tagId) {
+        Map<String, Entry> entries = byTagId.get(tagId.copy());
+        return entries == null ? null : entries.values().iterator().next();
+    }
+
+    /**
+     * Returns all tags with the given ref target ordered by name.
+     */
+    public synchronized List<Entry> getAllByTagId(AnyObjectId tagId) {
+        Map<String, Entry> entries = byTagId.get(tagId.copy());
+        return entries == null ? new ArrayList<Entry>() : new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Returns all indexed tags ordered by name.
+     */
+    public synchronized List<Entry> list() {
+        return new ArrayList<Entry>(byName.values());
+    }
+
+    private void add(Entry entry) {
+        byName.put(entry.name, entry);
+        Map<String, Entry> entries = byTagId.get(entry.tagId);
+        if (entries == null) {
+            entries = new TreeMap<String, Entry>();
+            byTagId.put(entry.tagId, entries);
+        }
+        entries.put(entry.name, entry);
+    }
+
+    private void remove(Entry entry) {
+        byName.remove(entry.name);
+        Map<String, Entry> entries = byTagId.get(entry.tagId);
+        if (entries != null) {
+            entries.remove(entry.name);
+            if (entries.isEmpty()) {
+                byTagId.remove(entry.tagId);
+            }
+        }
+    }
+
+    private ObjectId peel(RevWalk walk, ObjectId tagId) throws IOException {
+        try {
+            RevObject object = walk.peel(walk.parseAny(tagId));
+            return object instanceof RevCommit ? object.copy() : null;
+        } catch (MissingObjectException e) {
+            LOGGER.debug("Tag object {} is missing, indexing it without commit", tagId.name());
+            return null;
+        }
+    }
+
+    /**
+     * A single indexed tag. {@code tagId} is the ref target, i.e. the annotated tag object or the commit itself for
+     * lightweight tags. {@code commitId} is {@code null} if the tag does not point to a commit.
+     */
+    public static final class Entry {
+        private final String name;
+        private final ObjectId tagId;
+        private final ObjectId commitId;
+
+        private Entry(String name, ObjectId tagId, ObjectId commitId) {
+            this.name = name;
+            this.tagId = tagId;
+            this.commitId = commitId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ObjectId getTagId() {
+            return tagId;
+        }
+
+        public ObjectId getCommitId() {
+            return commitId;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.openengsb.domain.scm.ScmException;
+
+/**
+ * Writes a subtree of a revision straight from the object database, without touching the work tree. Only the
+ * trees and blobs below the requested path are read, so the cost depends on the size of the subtree alone. Files
+ * are materialized through a {@link BlobStore} if one is given.
+ */
+public class TreeExporter {
+    private final Repository repository;
+    private final BlobStore blobStore;
+
+    public TreeExporter(Repository repository, BlobStore blobStore) {
+        this.repository = repository;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Writes {@code path} of {@code tree} to {@code target}.
+     *
+     * @param path the directory or file to export, the whole tree if empty
+     * @param reroot whether to write the contents of {@code path} directly into {@code target} instead of below
+     *        {@code target/path}
+     * @return the number of files written
+     */
+    public int export(AnyObjectId tree, String path, File target, boolean reroot) throws IOException {
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            if (path.length() == 0) {
+                return exportTree(reader, tree, target);
+            }
+            TreeWalk lookup = TreeWalk.forPath(reader, path, new AnyObjectId[]{ tree });
+            if (lookup == null) {
+                throw new ScmException("Path [" + path + "] doesn't exist.");
+            }
+            FileMode mode = lookup.getFileMode(0);
+            File destination = reroot ? target : new File(target, path);
+            if (lookup.isSubtree()) {
+                return exportTree(reader, lookup.getObjectId(0), destination);
+            }
+            if (reroot) {
+                destination = new File(target, lookup.getNameString());
+            }
+            writeFile(reader, destination, mode, lookup.getObjectId(0));
+            return 1;
+        } finally {
+            reader.release();
+        }
+    }
+
+    private int exportTree(ObjectReader reader, AnyObjectId tree, File target) throws IOException {
+        TreeWalk walk = new TreeWalk(reader);
+        try {
+            int files = 0;
+            walk.setRecursive(true);
+            walk.addTree(tree);
+            target.mkdirs();
+            while (walk.next()) {
+                writeFile(reader, new File(target, walk.getPathString()), walk.getFileMode(0), walk.getObjectId(0));
+                files++;
+            }
+            return files;
+        } finally {
+            walk.release();
+        }
+    }
+
+    private void writeFile(ObjectReader reader, File file, FileMode mode, ObjectId id) throws IOException {
+        if (blobStore != null && (mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE)) {
+            blobStore.materialize(reader, id, file, mode == FileMode.EXECUTABLE_FILE);
+        } else {
+            SparseCheckout.writeFile(repository, reader, file, mode, id);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.openengsb.connector.git.domain.TreeEntry;
+import org.openengsb.connector.git.domain.TreeListing;
+import org.openengsb.domain.scm.ScmException;
+
+/**
+ * Lists a tree page by page without materializing it.
+ * <p>
+ * Entries are produced in git tree order, directories before their contents. A cursor consists of the id of the
+ * listed tree and the path of the last returned entry, so later pages list the same tree even if the branch moved
+ * meanwhile. Resuming only descends into the subtrees leading to the cursor path instead of walking all entries
+ * before it.
+ */
+public class TreeLister {
+    private final Repository repository;
+
+    public TreeLister(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Lists {@code tree}, starting after the entry named by {@code cursor} if not {@code null}.
+     *
+     * @param maxDepth number of directory levels to list, {@code 1} for the direct children only or {@code 0} for
+     *        no limit
+     * @param withSizes whether to look up the size of every blob, which needs an object lookup per entry
+     */
+    public TreeListing list(AnyObjectId tree, String cursor, int maxDepth, boolean withSizes, int pageSize)
+        throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size has to be positive");
+        }
+        AnyObjectId treeId = tree;
+        String after = null;
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            if (separator != Constants.OBJECT_ID_STRING_LENGTH || !ObjectId.isId(cursor.substring(0, separator))) {
+                throw new ScmException("Invalid listing cursor [" + cursor + "]");
+            }
+            treeId = ObjectId.fromString(cursor.substring(0, separator));
+            after = cursor.substring(separator + 1);
+        }
+        List<TreeEntry> entries = new ArrayList<TreeEntry>(Math.min(pageSize, 1024));
+        ObjectReader reader = repository.newObjectReader();
+        TreeWalk walk = new TreeWalk(reader);
+        try {
+            walk.addTree(treeId);
+            walk.setRecursive(false);
+            while (walk.next()) {
+                String path = walk.getPathString();
+                if (after != null) {
+                    if (path.equals(after)) {
+                        after = null;
+                    }
+                    // entries before the cursor are only entered when the cursor lies below them
+                    if (walk.isSubtree() && (after == null ? canDescend(walk, maxDepth)
+                            : after.startsWith(path + "/"))) {
+                        walk.enterSubtree();
+                    }
+                    continue;
+                }
+                if (entries.size() == pageSize) {
+                    return new TreeListing(entries, treeId.name() + ":" + entries.get(pageSize - 1).getPath());
+                }
+                FileMode mode = walk.getFileMode(0);
+                ObjectId id = walk.getObjectId(0);
+                long size = -1;
+                if (withSizes && mode.getObjectType() == Constants.OBJ_BLOB) {
+                    size = reader.getObjectSize(id, Constants.OBJ_BLOB);
+                }
+                entries.add(new TreeEntry(walk.getNameString(), path, mode.getBits(), id.name(), size));
+                if (walk.isSubtree() && canDescend(walk, maxDepth)) {
+                    walk.enterSubtree();
+                }
+            }
+            return new TreeListing(entries, null);
+        } finally {
+            walk.release();
+        }
+    }
+
+    private static boolean canDescend(TreeWalk walk, int maxDepth) {
+        return maxDepth <= 0 || walk.getDepth() + 1 < maxDepth;
+    }
+}
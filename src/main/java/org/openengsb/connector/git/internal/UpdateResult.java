@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.util.List;
+
+import org.openengsb.domain.scm.CommitRef;
+
+/**
+ * Outcome of an update run by the {@link FetchCoordinator} for a single connector instance.
+ */
+public class UpdateResult {
+    private final GitServiceImpl service;
+    private final List<CommitRef> commits;
+    private final RuntimeException error;
+    private final long duration;
+
+    public UpdateResult(GitServiceImpl service, List<CommitRef> commits, RuntimeException error, long duration) {
+        this.service = service;
+        this.commits = commits;
+        this.error = error;
+        this.duration = duration;
+    }
+
+    public GitServiceImpl getService() {
+        return service;
+    }
+
+    /**
+     * The commits reported by {@link GitServiceImpl#update()}, {@code null} if the update failed or nothing could be
+     * fetched.
+     */
+    public List<CommitRef> getCommits() {
+        return commits;
+    }
+
+    public RuntimeException getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Time spent in the update in milliseconds, excluding the time the update waited for a free slot.
+     */
+    public long getDuration() {
+        return duration;
+    }
+}
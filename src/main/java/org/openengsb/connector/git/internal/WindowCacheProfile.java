@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+/**
+ * Operator overrides for the JGit window cache of a single connector instance. Every value is optional; unset
+ * values are sized automatically by the {@link WindowCacheTuner}.
+ */
+public class WindowCacheProfile {
+    private Long packedGitLimit;
+    private Integer packedGitWindowSize;
+    private Integer deltaBaseCacheLimit;
+    private Boolean packedGitMMAP;
+
+    public Long getPackedGitLimit() {
+        return packedGitLimit;
+    }
+
+    public void setPackedGitLimit(Long packedGitLimit) {
+        this.packedGitLimit = packedGitLimit;
+    }
+
+    public Integer getPackedGitWindowSize() {
+        return packedGitWindowSize;
+    }
+
+    public void setPackedGitWindowSize(Integer packedGitWindowSize) {
+        this.packedGitWindowSize = packedGitWindowSize;
+    }
+
+    public Integer getDeltaBaseCacheLimit() {
+        return deltaBaseCacheLimit;
+    }
+
+    public void setDeltaBaseCacheLimit(Integer deltaBaseCacheLimit) {
+        this.deltaBaseCacheLimit = deltaBaseCacheLimit;
+    }
+
+    public Boolean getPackedGitMMAP() {
+        return packedGitMMAP;
+    }
+
+    public void setPackedGitMMAP(Boolean packedGitMMAP) {
+        this.packedGitMMAP = packedGitMMAP;
+    }
+
+    /**
+     * Combines the overrides of two instances sharing the process wide cache. Sizes take the larger value and
+     * memory mapping is enabled if any instance asks for it.
+     */
+    public WindowCacheProfile merge(WindowCacheProfile other) {
+        WindowCacheProfile merged = new WindowCacheProfile();
+        merged.packedGitLimit = max(packedGitLimit, other.packedGitLimit);
+        merged.packedGitWindowSize = max(packedGitWindowSize, other.packedGitWindowSize);
+        merged.deltaBaseCacheLimit = max(deltaBaseCacheLimit, other.deltaBaseCacheLimit);
+        if (packedGitMMAP == null) {
+            merged.packedGitMMAP = other.packedGitMMAP;
+        } else if (other.packedGitMMAP == null) {
+            merged.packedGitMMAP = packedGitMMAP;
+        } else {
+            merged.packedGitMMAP = packedGitMMAP || other.packedGitMMAP;
+        }
+        return merged;
+    }
+
+    private static <T extends Comparable<T>> T max(T a, T b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * Parses a size in the notation used by git config files, e.g. {@code 512k}, {@code 64m} or {@code 2g}. Blank
+     * values yield {@code null}.
+     */
+    public static Long parseSize(String value) {
+        if (value == null || value.trim().length() == 0) {
+            return null;
+        }
+        String size = value.trim().toLowerCase();
+        long multiplier = 1;
+        char unit = size.charAt(size.length() - 1);
+        if (unit == 'k') {
+            multiplier = 1024;
+        } else if (unit == 'm') {
+            multiplier = 1024 * 1024;
+        } else if (unit == 'g') {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        if (multiplier != 1) {
+            size = size.substring(0, size.length() - 1).trim();
+        }
+        return Long.parseLong(size) * multiplier;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.jgit.storage.file.WindowCache;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes JGit's process wide {@link WindowCache} from the pack files of all registered connector instances and the
+ * available heap. The cache is only reconfigured if the computed configuration actually changes, since
+ * reconfiguring drops every cached window.
+ * <p>
+ * Instances are removed with {@link #unregister(String)} when they are closed. Profiles are only weakly referenced,
+ * so instances that are discarded without being closed drop out of the measured set once they are collected.
+ */
+public final class WindowCacheTuner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WindowCacheTuner.class);
+
+    static final int KB = 1024;
+    static final int MB = 1024 * KB;
+
+    private static final long MIN_PACKED_GIT_LIMIT = 10 * MB;
+    private static final int MIN_WINDOW_SIZE = 8 * KB;
+    private static final int MAX_HEAP_WINDOW_SIZE = MB;
+    private static final int MAX_MMAP_WINDOW_SIZE = 64 * MB;
+    private static final int MIN_DELTA_BASE_CACHE_LIMIT = 10 * MB;
+    private static final int MIN_OPEN_FILES = 128;
+    private static final int MAX_OPEN_FILES = 1024;
+
+    private static final Map<String, File> OBJECT_DIRECTORIES = new HashMap<String, File>();
+    private static final Map<String, WeakReference<WindowCacheProfile>> PROFILES =
+        new HashMap<String, WeakReference<WindowCacheProfile>>();
+    private static String appliedConfig;
+
+    private WindowCacheTuner() {
+    }
+
+    /**
+     * Adds the object database of a connector instance to the measured set and reapplies the configuration.
+     */
+    public static synchronized void register(String instanceId, File objectsDirectory, WindowCacheProfile profile) {
+        OBJECT_DIRECTORIES.put(instanceId, objectsDirectory);
+        PROFILES.put(instanceId, new WeakReference<WindowCacheProfile>(profile));
+        refresh();
+    }
+
+    /**
+     * Removes a connector instance from the measured set and reapplies the configuration.
+     */
+    public static synchronized void unregister(String instanceId) {
+        if (OBJECT_DIRECTORIES.remove(instanceId) != null | PROFILES.remove(instanceId) != null) {
+            refresh();
+        }
+    }
+
+    /**
+     * Measures the packs of all registered instances again, e.g. after a fetch, and reconfigures the cache if the
+     * resulting configuration differs from the applied one.
+     */
+    public static synchronized void refresh() {
+        Iterator<Map.Entry<String, WeakReference<WindowCacheProfile>>> registered = PROFILES.entrySet().iterator();
+        while (registered.hasNext()) {
+            Map.Entry<String, WeakReference<WindowCacheProfile>> entry = registered.next();
+            if (entry.getValue().get() == null) {
+                LOGGER.debug("Connector {} was discarded without being closed", entry.getKey());
+                OBJECT_DIRECTORIES.remove(entry.getKey());
+                registered.remove();
+            }
+        }
+        long totalPackSize = 0;
+        int packCount = 0;
+        for (File objectsDirectory : OBJECT_DIRECTORIES.values()) {
+            File[] packs = new File(objectsDirectory, "pack").listFiles();
+            if (packs == null) {
+                continue;
+            }
+            for (File pack : packs) {
+                if (pack.getName().endsWith(".pack")) {
+                    totalPackSize += pack.length();
+                    packCount++;
+                }
+            }
+        }
+        WindowCacheProfile overrides = new WindowCacheProfile();
+        for (WeakReference<WindowCacheProfile> reference : PROFILES.values()) {
+            WindowCacheProfile profile = reference.get();
+            if (profile != null) {
+                overrides = overrides.merge(profile);
+            }
+        }
+        WindowCacheConfig config =
+            computeConfig(totalPackSize, packCount, Runtime.getRuntime().maxMemory(), overrides);
+        String signature = describe(config);
+        if (signature.equals(appliedConfig)) {
+            return;
+        }
+        LOGGER.debug("Reconfiguring window cache for {} bytes in {} packs: {}",
+            new Object[]{ totalPackSize, packCount, signature });
+        try {
+            WindowCache.reconfigure(config);
+            appliedConfig = signature;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Window cache configuration {} rejected by JGit, keeping previous one", signature, e);
+        }
+    }
+
+    /**
+     * Computes the cache configuration for the given pack volume and heap. Sizes are rounded to powers of two so
+     * that growing packs only trigger a reconfiguration when crossing a bucket.
+     */
+    static WindowCacheConfig computeConfig(long totalPackSize, int packCount, long maxHeap,
+            WindowCacheProfile overrides) {
+        boolean mmap = overrides.getPackedGitMMAP() != null && overrides.getPackedGitMMAP();
+
+        long packedGitLimit;
+        if (overrides.getPackedGitLimit() != null) {
+            packedGitLimit = overrides.getPackedGitLimit();
+        } else {
+            packedGitLimit = Math.max(MIN_PACKED_GIT_LIMIT, roundUp(totalPackSize));
+            if (!mmap) {
+                // windows live on the heap unless they are memory mapped
+                packedGitLimit = Math.min(packedGitLimit, Math.max(MIN_PACKED_GIT_LIMIT, roundDown(maxHeap / 4)));
+            }
+        }
+
+        int windowSize;
+        if (overrides.getPackedGitWindowSize() != null) {
+            windowSize = overrides.getPackedGitWindowSize();
+        } else {
+            long maxWindowSize = mmap ? MAX_MMAP_WINDOW_SIZE : MAX_HEAP_WINDOW_SIZE;
+            windowSize = (int) clamp(roundDown(packedGitLimit / 1024), MIN_WINDOW_SIZE, maxWindowSize);
+        }
+
+        int deltaBaseCacheLimit;
+        if (overrides.getDeltaBaseCacheLimit() != null) {
+            deltaBaseCacheLimit = overrides.getDeltaBaseCacheLimit();
+        } else {
+            long upper = Math.max(MIN_DELTA_BASE_CACHE_LIMIT, Math.min(Integer.MAX_VALUE, maxHeap / 16));
+            deltaBaseCacheLimit = (int) clamp(roundUp(totalPackSize / 64), MIN_DELTA_BASE_CACHE_LIMIT, upper);
+        }
+
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.setPackedGitOpenFiles((int) clamp(packCount * 2, MIN_OPEN_FILES, MAX_OPEN_FILES));
+        config.setPackedGitLimit(Math.max(packedGitLimit, windowSize));
+        config.setPackedGitWindowSize(windowSize);
+        config.setPackedGitMMAP(mmap);
+        config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        return config;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long roundUp(long value) {
+        long rounded = Long.highestOneBit(value);
+        return rounded < value ? rounded << 1 : rounded;
+    }
+
+    private static long roundDown(long value) {
+        return Long.highestOneBit(value);
+    }
+
+    private static String describe(WindowCacheConfig config) {
+        return "packedGitOpenFiles=" + config.getPackedGitOpenFiles()
+                + ", packedGitLimit=" + config.getPackedGitLimit()
+                + ", packedGitWindowSize=" + config.getPackedGitWindowSize()
+                + ", packedGitMMAP=" + config.isPackedGitMMAP()
+                + ", deltaBaseCacheLimit=" + config.getDeltaBaseCacheLimit();
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.Test;
+
+public class BlobContentCacheTest {
+
+    private final ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+
+    @Test
+    public void getAfterPut_shouldCountHitsAndMisses() throws Exception {
+        BlobContentCache cache = new BlobContentCache(100, 50);
+        ObjectId blob = blob("content");
+        assertThat(cache.get(blob), nullValue());
+        cache.put(blob, "content".getBytes());
+        assertThat(new String(cache.get(blob)), is("content"));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHitRatio(), is(0.5));
+        assertThat(cache.getSize(), is(7L));
+    }
+
+    @Test
+    public void putLargeBlob_shouldNotAdmitIt() throws Exception {
+        BlobContentCache cache = new BlobContentCache(100, 5);
+        assertThat(cache.admits(6), is(false));
+        cache.put(blob("too large"), "too large".getBytes());
+        assertThat(cache.getCount(), is(0));
+    }
+
+    @Test
+    public void putOverBudget_shouldEvictLeastRecentlyUsed() throws Exception {
+        BlobContentCache cache = new BlobContentCache(10, 10);
+        ObjectId first = blob("aaaa");
+        ObjectId second = blob("bbbb");
+        ObjectId third = blob("cccc");
+        cache.put(first, "aaaa".getBytes());
+        cache.put(second, "bbbb".getBytes());
+        cache.get(first);
+        cache.put(third, "cccc".getBytes());
+        assertThat(cache.getEvictions(), is(1L));
+        assertThat(cache.get(second), nullValue());
+        assertThat(cache.get(first), notNullValue());
+        assertThat(cache.get(third), notNullValue());
+        assertThat(cache.getSize(), is(8L));
+    }
+
+    private ObjectId blob(String content) {
+        return formatter.idFor(Constants.OBJ_BLOB, content.getBytes());
+    }
+}
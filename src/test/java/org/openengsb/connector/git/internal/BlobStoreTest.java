@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlobStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FileRepository repository;
+    private ObjectReader reader;
+    private BlobStore store;
+    private ObjectId blob;
+
+    @Before
+    public void setup() throws Exception {
+        repository = RepositoryFixture.createRepository(temporaryFolder.newFolder("repository"));
+        ObjectInserter inserter = repository.newObjectInserter();
+        blob = inserter.insert(Constants.OBJ_BLOB, Constants.encode("shared content"));
+        inserter.flush();
+        inserter.release();
+        reader = repository.newObjectReader();
+        store = new BlobStore(temporaryFolder.newFolder("blobs"), 0);
+    }
+
+    @After
+    public void tearDown() {
+        reader.release();
+        repository.close();
+    }
+
+    @Test
+    public void materializeTwice_shouldStoreBlobOnce() throws Exception {
+        File first = new File(temporaryFolder.getRoot(), "export1/file");
+        File second = new File(temporaryFolder.getRoot(), "export2/dir/file");
+        boolean linked = store.materialize(reader, blob, first, false);
+        store.materialize(reader, blob, second, false);
+        assertThat(FileUtils.readFileToString(first), is("shared content"));
+        assertThat(FileUtils.readFileToString(second), is("shared content"));
+        assertThat(linked, is(store.isLinksSupported()));
+        assertThat(store.fileFor(blob).isFile(), is(linked));
+        if (linked) {
+            assertThat(store.linkCount(store.fileFor(blob)), is(3));
+        }
+    }
+
+    @Test
+    public void gc_shouldOnlyRemoveUnreferencedBlobs() throws Exception {
+        File export = new File(temporaryFolder.getRoot(), "export/file");
+        boolean linked = store.materialize(reader, blob, export, false);
+        assertThat(store.gc(), is(0));
+        assertThat(store.fileFor(blob).isFile(), is(linked));
+        FileUtils.forceDelete(export);
+        assertThat(store.gc(), is(linked ? 1 : 0));
+        assertThat(store.fileFor(blob).exists(), is(false));
+    }
+
+    @Test
+    public void materializeExecutable_shouldCopyWritableFile() throws Exception {
+        File export = new File(temporaryFolder.getRoot(), "export/script");
+        assertThat(store.materialize(reader, blob, export, true), is(false));
+        assertThat(export.canWrite(), is(true));
+        assertThat(FileUtils.readFileToString(export), is("shared content"));
+        assertThat(store.fileFor(blob).exists(), is(false));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CommitGraphTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FileRepository repository;
+
+    @Before
+    public void setup() throws Exception {
+        repository = RepositoryFixture.createRepository(temporaryFolder.newFolder("repository"));
+    }
+
+    @After
+    public void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    public void reloadPersistedGraph_shouldKeepAllCommits() throws Exception {
+        ObjectId first = repository.resolve(Constants.HEAD);
+        Git git = new Git(repository);
+        RepositoryFixture.addFile(git, "second");
+        RepositoryFixture.commit(git, "second commit");
+        ObjectId second = repository.resolve(Constants.HEAD);
+        CommitGraph graph = new CommitGraph(repository);
+        graph.update();
+
+        CommitGraph reloaded = new CommitGraph(repository);
+        assertThat(reloaded.size(), is(2));
+        assertThat(reloaded.contains(first), is(true));
+        assertThat(reloaded.contains(second), is(true));
+        assertThat(reloaded.getGeneration(second), is(graph.getGeneration(second)));
+        assertThat(reloaded.isAncestor(first, second), is(true));
+        assertThat(reloaded.isAncestor(second, first), is(false));
+    }
+
+    @Test
+    public void loadGraphWithDamagedHeader_shouldStartEmpty() throws Exception {
+        File graphFile = new File(new File(repository.getDirectory(), "openengsb"), "commit-graph");
+        graphFile.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(graphFile));
+        out.writeInt(0x4f434731);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(-1);
+        out.close();
+
+        CommitGraph graph = new CommitGraph(repository);
+        assertThat(graph.size(), is(0));
+        graph.update();
+        assertThat(graph.size(), is(1));
+    }
+}
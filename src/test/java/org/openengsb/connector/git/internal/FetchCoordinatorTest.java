@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FetchCoordinatorTest extends AbstractGitServiceImpl {
+
+    private FetchCoordinator coordinator;
+
+    @After
+    public void tearDown() {
+        if (coordinator != null) {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    public void updateAll_shouldReturnResultForEveryService() throws Exception {
+        List<GitServiceImpl> services = new ArrayList<GitServiceImpl>();
+        services.add(service);
+        for (int i = 0; i < 3; i++) {
+            File workspace = tempFolder.newFolder("local" + i);
+            GitServiceImpl other = new GitServiceImpl("instance" + i);
+            other.setLocalWorkspace(workspace.getAbsolutePath());
+            other.setRemoteLocation(service.getRemoteLocation());
+            other.setWatchBranch("master");
+            services.add(other);
+        }
+        coordinator = new FetchCoordinator(2, 1);
+        int count = 0;
+        for (UpdateResult result : coordinator.updateAll(services)) {
+            assertThat(result.isSuccessful(), is(true));
+            assertThat(result.getCommits().size(), is(1));
+            count++;
+        }
+        assertThat(count, is(4));
+    }
+
+    @Test
+    public void updateWithBrokenRemote_shouldReportError() throws Exception {
+        service.setRemoteLocation(new File(tempFolder.getRoot(), "missing").toURI().toURL().toExternalForm());
+        List<GitServiceImpl> services = new ArrayList<GitServiceImpl>();
+        services.add(service);
+        coordinator = new FetchCoordinator(1, 1);
+        UpdateResult result = coordinator.updateAll(services).iterator().next();
+        assertThat(result.isSuccessful(), is(false));
+    }
+
+    @Test
+    public void updateAllAfterShutdown_shouldReportDroppedUpdates() throws Exception {
+        List<GitServiceImpl> services = new ArrayList<GitServiceImpl>();
+        services.add(service);
+        coordinator = new FetchCoordinator(1, 1);
+        coordinator.shutdown();
+        Iterable<UpdateResult> results = coordinator.updateAll(services);
+        assertThat(results.iterator().next().isSuccessful(), is(false));
+        try {
+            results.iterator();
+            Assert.fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void hostOf_shouldGroupByRemoteHostOrLocalPath() {
+        service.setRemoteLocation("git://Example.org/repo.git");
+        assertThat(FetchCoordinator.hostOf(service), is("example.org"));
+        service.setRemoteLocation("file:///tmp/repo");
+        assertThat(FetchCoordinator.hostOf(service), is("local:/tmp/repo"));
+        service.setRemoteLocation("/tmp/other");
+        assertThat(FetchCoordinator.hostOf(service), is("local:/tmp/other"));
+    }
+}
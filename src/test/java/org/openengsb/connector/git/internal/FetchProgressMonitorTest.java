@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FetchProgressMonitorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void updateReceivingTask_shouldReportProgressAndEstimate() throws Exception {
+        FetchProgressMonitor monitor = new FetchProgressMonitor(temporaryFolder.newFolder("objects"), 0);
+        monitor.beginTask("Receiving objects", 100);
+        monitor.update(25);
+        monitor.update(25);
+        assertThat(monitor.getObjectsTotal(), is(100));
+        assertThat(monitor.getObjectsReceived(), is(50));
+        assertThat(monitor.getTaskPercent(), is(50));
+        assertThat(monitor.getEstimatedRemainingTime(), greaterThanOrEqualTo(0L));
+        monitor.endTask();
+        monitor.beginTask("Resolving deltas", 10);
+        monitor.update(10);
+        assertThat(monitor.getDeltasResolved(), is(10));
+        monitor.finish();
+        assertThat(monitor.getEstimatedRemainingTime(), is(0L));
+    }
+
+    @Test
+    public void updateWithBandwidthLimit_shouldDelayReceivingThread() throws Exception {
+        File objects = temporaryFolder.newFolder("objects");
+        RandomAccessFile incoming = new RandomAccessFile(new File(objects, "incoming_1.pack"), "rw");
+        incoming.setLength(20 * 1024);
+        incoming.close();
+        FetchProgressMonitor monitor = new FetchProgressMonitor(objects, 100 * 1024);
+        monitor.beginTask("Receiving objects", 10);
+        long start = System.currentTimeMillis();
+        monitor.update(1);
+        assertThat(monitor.getBytesReceived(), is(20L * 1024));
+        assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(150L));
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load and soak test running several connectors against local remotes while writer threads keep committing to the
+ * remotes and reader threads call {@code update}, {@code get}, {@code exists} and {@code export} concurrently. It
+ * reports throughput, latency percentiles and errors per operation as well as heap and disk growth, and runs too
+ * long to be run automatically.
+ * <p>
+ * The load can be tuned with the system properties {@code stress.connectors}, {@code stress.writers},
+ * {@code stress.readers} and {@code stress.duration} (in seconds).
+ */
+public class GitServiceImplStressUT {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitServiceImplStressUT.class);
+
+    private static final String[] OPERATIONS = { "update", "get", "exists", "export" };
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final int connectors = Integer.getInteger("stress.connectors", 4);
+    private final int writers = Integer.getInteger("stress.writers", 2);
+    private final int readers = Integer.getInteger("stress.readers", 8);
+    private final long duration = TimeUnit.SECONDS.toMillis(Integer.getInteger("stress.duration", 60));
+
+    private final List<Git> remotes = new ArrayList<Git>();
+    private final List<GitServiceImpl> services = new ArrayList<GitServiceImpl>();
+    private final Map<String, LatencyRecorder> recorders = new TreeMap<String, LatencyRecorder>();
+
+    @Before
+    public void setup() throws Exception {
+        for (int i = 0; i < connectors; i++) {
+            File remoteDirectory = tempFolder.newFolder("remote" + i);
+            FileRepository remoteRepository = RepositoryFixture.createRepository(remoteDirectory);
+            remotes.add(new Git(remoteRepository));
+            GitServiceImpl service = new GitServiceImpl("stress" + i);
+            service.setLocalWorkspace(tempFolder.newFolder("local" + i).getAbsolutePath());
+            service.setRemoteLocation(remoteDirectory.toURI().toURL().toExternalForm().replace("%20", " "));
+            service.setWatchBranch("master");
+            service.update();
+            services.add(service);
+        }
+        recorders.put("commit", new LatencyRecorder());
+        for (String operation : OPERATIONS) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (GitServiceImpl service : services) {
+            FileUtils.deleteQuietly(scratchRoot(service));
+        }
+    }
+
+    @Test
+    public void soak_shouldNotFailOrLeak() throws Exception {
+        long heapBefore = usedHeap();
+        long diskBefore = diskUsage();
+        final long deadline = System.currentTimeMillis() + duration;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        final AtomicInteger fileCounter = new AtomicInteger();
+        for (int i = 0; i < writers; i++) {
+            final Random random = new Random(i);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    while (System.currentTimeMillis() < deadline) {
+                        Git remote = remotes.get(random.nextInt(remotes.size()));
+                        long start = System.nanoTime();
+                        try {
+                            synchronized (remote) {
+                                String name = "file" + fileCounter.incrementAndGet();
+                                RepositoryFixture.addFile(remote, name);
+                                RepositoryFixture.commit(remote, "add " + name);
+                            }
+                            recorders.get("commit").record(System.nanoTime() - start);
+                        } catch (Exception e) {
+                            recorders.get("commit").recordError(e);
+                        }
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < readers; i++) {
+            final Random random = new Random(1000 + i);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    while (System.currentTimeMillis() < deadline) {
+                        GitServiceImpl service = services.get(random.nextInt(services.size()));
+                        String operation = OPERATIONS[random.nextInt(OPERATIONS.length)];
+                        long start = System.nanoTime();
+                        try {
+                            runOperation(service, operation);
+                            recorders.get(operation).record(System.nanoTime() - start);
+                        } catch (Exception e) {
+                            recorders.get(operation).recordError(e);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        long heapAfter = usedHeap();
+        long diskAfter = diskUsage();
+        int errors = 0;
+        LOGGER.info("Stress run: {} connectors, {} writers, {} readers, {} s", new Object[]{ connectors, writers,
+            readers, TimeUnit.MILLISECONDS.toSeconds(duration) });
+        for (Map.Entry<String, LatencyRecorder> entry : recorders.entrySet()) {
+            LOGGER.info("{}: {}", entry.getKey(), entry.getValue().report(duration));
+            errors += entry.getValue().getErrors();
+        }
+        LOGGER.info("Heap growth: {} KB, disk growth: {} KB", (heapAfter - heapBefore) / 1024,
+            (diskAfter - diskBefore) / 1024);
+        assertThat(errors, is(0));
+    }
+
+    private void runOperation(GitServiceImpl service, String operation) {
+        if ("update".equals(operation)) {
+            service.update();
+        } else if ("get".equals(operation)) {
+            service.get("testfile");
+        } else if ("exists".equals(operation)) {
+            service.exists("testfile");
+        } else {
+            service.export();
+        }
+    }
+
+    private long diskUsage() {
+        long usage = FileUtils.sizeOfDirectory(tempFolder.getRoot());
+        for (GitServiceImpl service : services) {
+            File scratch = scratchRoot(service);
+            if (scratch.isDirectory()) {
+                usage += FileUtils.sizeOfDirectory(scratch);
+            }
+        }
+        return usage;
+    }
+
+    private static File scratchRoot(GitServiceImpl service) {
+        return new File(System.getProperty("java.io.tmpdir"), "openengsb-git-" + service.getInstanceId());
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Collects the latencies and errors of one operation.
+     */
+    private static final class LatencyRecorder {
+        private long[] samples = new long[1024];
+        private int count;
+        private int errors;
+
+        public synchronized void record(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+
+        public synchronized void recordError(Exception e) {
+            if (errors == 0) {
+                LOGGER.warn("First error", e);
+            }
+            errors++;
+        }
+
+        public synchronized int getErrors() {
+            return errors;
+        }
+
+        public synchronized String report(long durationMillis) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return String.format("%d ops (%.1f/s), p50 %.1f ms, p99 %.1f ms, p999 %.1f ms, %d errors", count,
+                count * 1000.0 / durationMillis, percentile(sorted, 0.5), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), errors);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1000000.0;
+        }
+    }
+}
@@ -28,16 +28,25 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.TagCommand;
+import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -46,6 +55,10 @@ import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.junit.Test;
 import org.openengsb.connector.git.domain.GitCommitRef;
 import org.openengsb.connector.git.domain.GitTagRef;
+import org.openengsb.connector.git.domain.SearchMatch;
+import org.openengsb.connector.git.domain.TreeEntry;
+import org.openengsb.connector.git.domain.TreeListing;
+import org.openengsb.core.api.model.OpenEngSBFileModel;
 import org.openengsb.domain.scm.CommitRef;
 import org.openengsb.domain.scm.ScmException;
 import org.openengsb.domain.scm.TagRef;
@@ -62,6 +75,76 @@ public class GitServiceImplTest extends AbstractGitServiceImpl {
         assertThat(commits.get(0).getStringRepresentation(), is(service.getRepository().resolve(Constants.HEAD).name()));
     }
 
+    @Test
+    public void updateWithEmptyWorkspace_shouldReportFetchProgress() throws Exception {
+        service.setFetchBandwidthLimit("10m");
+        service.update();
+        FetchProgressMonitor progress = service.getFetchProgress();
+        assertThat(progress, notNullValue());
+        assertThat(progress.isFinished(), is(true));
+        assertThat(progress.getObjectsReceived(), is(progress.getObjectsTotal()));
+        assertThat(progress.getBytesReceived() > 0, is(true));
+        assertThat(progress.getEstimatedRemainingTime(), is(0L));
+    }
+
+    @Test
+    public void updateSparseWorkspace_shouldOnlyWriteIncludedPaths() throws Exception {
+        Git git = new Git(remoteRepository);
+        FileUtils.writeStringToFile(new File(remoteDirectory, "dir/a"), "a");
+        git.add().addFilepattern("dir").call();
+        RepositoryFixture.commit(git, "add dir");
+        service.setSparseInclude("dir");
+        service.update();
+        assertThat(new File(localDirectory, "dir/a").isFile(), is(true));
+        assertThat(new File(localDirectory, "testfile").exists(), is(false));
+        assertThat(service.get("testfile").getFile().isFile(), is(true));
+
+        FileUtils.writeStringToFile(new File(remoteDirectory, "dir/b"), "b");
+        git.add().addFilepattern("dir").call();
+        RepositoryFixture.addFile(git, "other");
+        RepositoryFixture.commit(git, "add more");
+        assertThat(service.update().size(), is(1));
+        assertThat(new File(localDirectory, "dir/b").isFile(), is(true));
+        assertThat(new File(localDirectory, "other").exists(), is(false));
+
+        service.setSparseInclude("");
+        service.update();
+        assertThat(new File(localDirectory, "testfile").isFile(), is(true));
+        assertThat(new File(localDirectory, "other").isFile(), is(true));
+    }
+
+    @Test
+    public void updateWithEmptyWorkspace_shouldCheckOutInParallel() throws Exception {
+        Git git = new Git(remoteRepository);
+        for (int i = 0; i < 300; i++) {
+            FileUtils.writeStringToFile(new File(remoteDirectory, "dir" + i % 7 + "/file" + i), "content " + i);
+        }
+        git.add().addFilepattern(".").call();
+        RepositoryFixture.commit(git, "add many files");
+        service.setCheckoutThreads("4");
+        service.update();
+        for (int i = 0; i < 300; i++) {
+            File file = new File(localDirectory, "dir" + i % 7 + "/file" + i);
+            assertThat(FileUtils.readFileToString(file), is("content " + i));
+        }
+        CheckoutTimings timings = service.getLastCheckoutTimings();
+        assertThat(timings.getFiles(), is(301));
+        assertThat(timings.getThreads(), is(4));
+        assertThat(DirCache.read(service.getRepository()).getEntryCount(), is(301));
+    }
+
+    @Test
+    public void updateIntoWorkspaceWithConflictingFile_shouldFail() throws Exception {
+        File untracked = new File(localDirectory, "testfile");
+        FileUtils.writeStringToFile(untracked, "local content");
+        try {
+            service.update();
+            Assert.fail("Should have thrown an exception");
+        } catch (ScmException e) {
+        }
+        assertThat(FileUtils.readFileToString(untracked), is("local content"));
+    }
+
     @Test
     public void updateAgainFromSameRepoState_shouldReturnFalseFromPoll() {
         List<CommitRef> updateOne = service.update();
@@ -97,6 +180,125 @@ public class GitServiceImplTest extends AbstractGitServiceImpl {
         assertThat(updateThree.size(), is(0));
     }
 
+    @Test
+    public void updateWithPageHandler_shouldDeliverCommitsInPages() throws Exception {
+        Git git = new Git(remoteRepository);
+        for (int i = 0; i < 4; i++) {
+            RepositoryFixture.addFile(git, "file" + i);
+            RepositoryFixture.commit(git, "commit " + i);
+        }
+        final List<List<CommitRef>> pages = new ArrayList<List<CommitRef>>();
+        int count = service.update(new CommitPageHandler() {
+            @Override
+            public void handlePage(List<CommitRef> page) {
+                pages.add(page);
+            }
+        }, 2, 0, InitialSyncPolicy.FULL_HISTORY);
+        assertThat(count, is(5));
+        assertThat(pages.size(), is(3));
+        assertThat(pages.get(0).get(0).getStringRepresentation(),
+            is(service.getRepository().resolve(Constants.HEAD).name()));
+    }
+
+    @Test
+    public void updateAsync_shouldDeliverCommitsThroughFuture() throws Exception {
+        Future<List<CommitRef>> update = service.updateAsync();
+        assertThat(update.get(30, TimeUnit.SECONDS).size(), is(1));
+        Future<OpenEngSBFileModel> export = service.exportAsync();
+        File f = export.get(30, TimeUnit.SECONDS).getFile();
+        assertThat(new File(f, "testfile").isFile(), is(true));
+        OpenEngSBFileModel file = service.getAsync("testfile").get(30, TimeUnit.SECONDS);
+        assertThat(file.getFile().isFile(), is(true));
+    }
+
+    @Test
+    public void warmUpUnclonedWorkspace_shouldNotCreateRepository() throws Exception {
+        service.warmUp().get(30, TimeUnit.SECONDS);
+        assertThat(new File(localDirectory, ".git").exists(), is(false));
+    }
+
+    @Test
+    public void warmUpClonedWorkspace_shouldOpenRepository() throws Exception {
+        service.update();
+        GitServiceImpl restarted = new GitServiceImpl("43");
+        restarted.setLocalWorkspace(localDirectory.getAbsolutePath());
+        restarted.setRemoteLocation(service.getRemoteLocation());
+        restarted.setWatchBranch("master");
+        restarted.warmUp().get(30, TimeUnit.SECONDS);
+        assertThat(restarted.getHead().getStringRepresentation(),
+            is(service.getRepository().resolve(Constants.HEAD).name()));
+    }
+
+    @Test
+    public void concurrentUpdates_shouldEachReportRangeSinceOwnHead() throws Exception {
+        service.update();
+        Git git = new Git(remoteRepository);
+        for (int i = 0; i < 2; i++) {
+            RepositoryFixture.addFile(git, "concurrent" + i);
+            RepositoryFixture.commit(git, "concurrent " + i);
+        }
+        List<Future<List<CommitRef>>> updates = new ArrayList<Future<List<CommitRef>>>();
+        service.setAsyncThreads("4");
+        for (int i = 0; i < 4; i++) {
+            updates.add(service.updateAsync());
+        }
+        int reported = 0;
+        for (Future<List<CommitRef>> update : updates) {
+            List<CommitRef> commits = update.get(30, TimeUnit.SECONDS);
+            assertThat(commits.size() == 0 || commits.size() == 2, is(true));
+            reported += commits.size() == 2 ? 1 : 0;
+        }
+        assertThat(reported > 0, is(true));
+        assertThat(service.getPollStatistics().getFullPolls() <= reported, is(true));
+    }
+
+    @Test
+    public void updateWithMaxCount_shouldStopAfterMaxCount() throws Exception {
+        Git git = new Git(remoteRepository);
+        RepositoryFixture.addFile(git, "second");
+        RepositoryFixture.commit(git, "second commit");
+        final List<CommitRef> commits = new ArrayList<CommitRef>();
+        int count = service.update(new CommitPageHandler() {
+            @Override
+            public void handlePage(List<CommitRef> page) {
+                commits.addAll(page);
+            }
+        }, 10, 1, InitialSyncPolicy.FULL_HISTORY);
+        assertThat(count, is(1));
+        assertThat(commits.size(), is(1));
+    }
+
+    @Test
+    public void updateInitialCloneWithHeadOnlyPolicy_shouldReportHeadOnly() throws Exception {
+        Git git = new Git(remoteRepository);
+        RepositoryFixture.addFile(git, "second");
+        RepositoryFixture.commit(git, "second commit");
+        final List<CommitRef> commits = new ArrayList<CommitRef>();
+        int count = service.update(new CommitPageHandler() {
+            @Override
+            public void handlePage(List<CommitRef> page) {
+                commits.addAll(page);
+            }
+        }, 10, 0, InitialSyncPolicy.HEAD_ONLY);
+        assertThat(count, is(1));
+        assertThat(commits.get(0).getStringRepresentation(), is(remoteRepository.resolve(Constants.HEAD).name()));
+    }
+
+    @Test
+    public void updateWithUnchangedRemote_shouldSkipPull() throws Exception {
+        service.update();
+        assertThat(service.update().size(), is(0));
+        assertThat(service.getPollStatistics().getSkippedPolls(), is(1L));
+        assertThat(service.getPollStatistics().getFullPolls(), is(0L));
+
+        Git git = new Git(remoteRepository);
+        RepositoryFixture.addFile(git, "second");
+        RepositoryFixture.commit(git, "second commit");
+        assertThat(service.update().size(), is(1));
+        assertThat(service.getPollStatistics().getFullPolls(), is(1L));
+        assertThat(service.getPollStatistics().getSkippedToFullRatio(), is(1.0));
+    }
+
     @Test
     public void updateWithNoExistingWatchBranch_shouldReturnFalse() {
         service.setWatchBranch("unknown");
@@ -206,6 +408,70 @@ public class GitServiceImplTest extends AbstractGitServiceImpl {
         assertThat(commitRef.getStringRepresentation(), is(localRepository.resolve(Constants.HEAD).name()));
     }
 
+    @Test
+    public void addAndTagWithPush_shouldPushBothInOneBatch() throws Exception {
+        service.setPush("true");
+        service.setPushWindow("60000");
+        service.update();
+        File toCommit = new File(localDirectory, "pushed");
+        toCommit.createNewFile();
+        CommitRef commitRef = service.add("push me", toCommit);
+        service.tagRepo("pushedTag");
+        service.flushPushes();
+        assertThat(remoteRepository.resolve("refs/heads/master").name(), is(commitRef.getStringRepresentation()));
+        assertThat(remoteRepository.getRef("refs/tags/pushedTag"), notNullValue());
+        assertThat(service.getPushStatistics().getPushes(), is(1L));
+        assertThat(service.getPushStatistics().getPushedRefs(), is(2L));
+    }
+
+    @Test
+    public void pushDivergedBranch_shouldFailWithoutForcing() throws Exception {
+        service.setPush("true");
+        service.setPushWindow("60000");
+        service.update();
+        Git remoteGit = new Git(remoteRepository);
+        RepositoryFixture.addFile(remoteGit, "remoteOnly");
+        RepositoryFixture.commit(remoteGit, "remote commit");
+        ObjectId remoteHead = remoteRepository.resolve("refs/heads/master");
+        File toCommit = new File(localDirectory, "localOnly");
+        toCommit.createNewFile();
+        service.add("local commit", toCommit);
+        try {
+            service.flushPushes();
+            Assert.fail("Should have thrown an exception");
+        } catch (ScmException e) {
+        }
+        assertThat(remoteRepository.resolve("refs/heads/master"), is(remoteHead));
+        assertThat(service.getPushStatistics().getFailedPushes(), is(1L));
+        assertThat(service.getPushStatistics().getLastFailure(), notNullValue());
+        assertThat(service.getPushStatistics().getDivergedRefs(), is(1L));
+        service.flushPushes();
+        assertThat(service.getPushStatistics().getFailedPushes(), is(1L));
+    }
+
+    @Test
+    public void pushToUnavailableRemote_shouldKeepRefsQueued() throws Exception {
+        service.setPush("true");
+        service.setPushWindow("60000");
+        service.update();
+        File toCommit = new File(localDirectory, "pushedLater");
+        toCommit.createNewFile();
+        CommitRef commitRef = service.add("push me later", toCommit);
+        File moved = new File(tempFolder.getRoot(), "moved");
+        assertThat(remoteDirectory.renameTo(moved), is(true));
+        try {
+            service.flushPushes();
+            Assert.fail("Should have thrown an exception");
+        } catch (ScmException e) {
+        }
+        assertThat(moved.renameTo(remoteDirectory), is(true));
+        service.flushPushes();
+        FileRepository remote = new FileRepository(new File(remoteDirectory, ".git"));
+        assertThat(remote.resolve("refs/heads/master").name(), is(commitRef.getStringRepresentation()));
+        remote.close();
+        assertThat(service.getPushStatistics().getPushes(), is(1L));
+    }
+
     @Test
     public void addNonExistingFile_shouldRaiseException() throws IOException {
         File toCommit = new File(localDirectory, "testfile");
@@ -380,6 +646,273 @@ public class GitServiceImplTest extends AbstractGitServiceImpl {
         assertThat(head.name(), is(commitRef.getStringRepresentation()));
     }
 
+    @Test
+    public void getPathHistory_shouldReturnCommitsTouchingPath() throws Exception {
+        Git git = new Git(remoteRepository);
+        RepositoryFixture.addFile(git, "other");
+        RepositoryFixture.commit(git, "other commit");
+        new File(remoteDirectory, "dir").mkdirs();
+        RepositoryFixture.addFile(git, "dir/nested");
+        RepositoryFixture.commit(git, "nested commit");
+        service.update();
+
+        File testfile = new File(localDirectory, "testfile");
+        FileUtils.writeStringToFile(testfile, "changed\n");
+        CommitRef changed = service.add("change testfile", testfile);
+
+        List<CommitRef> history = service.getPathHistory("testfile", null, null, 0);
+        assertThat(history.size(), is(2));
+        assertThat(history.get(0).getStringRepresentation(), is(changed.getStringRepresentation()));
+        assertThat(service.getPathHistory("testfile", null, null, 1).size(), is(1));
+        assertThat(service.getPathHistory("dir", null, null, 0).size(), is(1));
+        assertThat(service.getPathHistory("missing", null, null, 0).size(), is(0));
+
+        List<CommitRef> range = service.getPathHistory("testfile", service.getHead(), null, 0);
+        assertThat(range.size(), is(0));
+    }
+
+    @Test
+    public void commitGraph_shouldAnswerAncestryQueries() throws Exception {
+        service.update();
+        CommitRef base = service.getHead();
+        File testfile = new File(localDirectory, "testfile");
+        FileUtils.writeStringToFile(testfile, "changed\n");
+        CommitRef local = service.add("change testfile", testfile);
+
+        FileRepository repository = service.getRepository();
+        RevWalk walk = new RevWalk(repository);
+        RevCommit baseCommit = walk.parseCommit(repository.resolve(base.getStringRepresentation()));
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(baseCommit.getTree());
+        builder.setParentId(baseCommit);
+        builder.setAuthor(new PersonIdent("side", "side@example.com"));
+        builder.setCommitter(builder.getAuthor());
+        builder.setMessage("side commit");
+        ObjectInserter inserter = repository.newObjectInserter();
+        ObjectId sideId = inserter.insert(builder);
+        inserter.flush();
+        inserter.release();
+        RefUpdate refUpdate = repository.updateRef("refs/heads/side");
+        refUpdate.setNewObjectId(sideId);
+        refUpdate.update();
+        CommitRef side = new GitCommitRef(walk.parseCommit(sideId));
+        walk.release();
+
+        assertThat(service.isAncestor(base, local), is(true));
+        assertThat(service.isAncestor(local, local), is(true));
+        assertThat(service.isAncestor(local, base), is(false));
+        assertThat(service.isAncestor(local, side), is(false));
+        assertThat(service.getMergeBase(local, side).getStringRepresentation(), is(base.getStringRepresentation()));
+        assertThat(service.countCommits(base, local), is(1));
+        assertThat(service.countCommits(null, local), is(2));
+        assertThat(service.countCommits(local, side), is(1));
+        assertThat(new File(repository.getDirectory(), "openengsb/commit-graph").isFile(), is(true));
+    }
+
+    @Test
+    public void getPathHistoryOfUnmergedBranch_shouldDiffCommitsMissingInIndex() throws Exception {
+        Git git = new Git(remoteRepository);
+        git.checkout().setName("side").setCreateBranch(true).call();
+        FileUtils.writeStringToFile(new File(remoteDirectory, "testfile"), "side\n");
+        git.add().addFilepattern("testfile").call();
+        RepositoryFixture.commit(git, "side commit");
+        RepositoryFixture.addFile(git, "sideOnly");
+        RepositoryFixture.commit(git, "unrelated side commit");
+        git.checkout().setName("master").call();
+        service.update();
+        service.getPathHistory("testfile", null, null, 0);
+
+        RevWalk walk = new RevWalk(service.getRepository());
+        ObjectId sideId = service.getRepository().resolve("refs/remotes/origin/side");
+        CommitRef side = new GitCommitRef(walk.parseCommit(sideId));
+        walk.release();
+        List<CommitRef> history = service.getPathHistory("testfile", null, side, 0);
+        assertThat(history.size(), is(2));
+        assertThat(service.getPathHistory("sideOnly", null, side, 0).size(), is(1));
+        assertThat(service.getPathHistory("testfile", null, null, 0).size(), is(1));
+    }
+
+    @Test
+    public void search_shouldReportMatchesOfAllPaths() throws Exception {
+        Git git = new Git(remoteRepository);
+        FileUtils.writeStringToFile(new File(remoteDirectory, "a"), "first\nlicense header\n");
+        FileUtils.writeStringToFile(new File(remoteDirectory, "b"), "first\nlicense header\n");
+        FileUtils.writeStringToFile(new File(remoteDirectory, "binary"), "license\u0000");
+        git.add().addFilepattern("a").addFilepattern("b").addFilepattern("binary").call();
+        RepositoryFixture.commit(git, "add files");
+        service.update();
+
+        final List<SearchMatch> matches = new ArrayList<SearchMatch>();
+        int count = service.search("lic[a-z]+", null, new SearchMatchHandler() {
+            @Override
+            public void handleMatch(SearchMatch match) {
+                matches.add(match);
+            }
+        });
+        assertThat(count, is(2));
+        assertThat(matches.size(), is(2));
+        for (SearchMatch match : matches) {
+            assertThat(match.getLine(), is(2));
+            assertThat(match.getOffset(), is(0));
+            assertThat(match.getText(), is("license header"));
+        }
+    }
+
+    @Test
+    public void searchWithInvalidPattern_shouldRaiseScmException() throws Exception {
+        service.update();
+        try {
+            service.search("lic[", null, new SearchMatchHandler() {
+                @Override
+                public void handleMatch(SearchMatch match) {
+                }
+            });
+            Assert.fail("Should have thrown an exception");
+        } catch (ScmException e) {
+        }
+    }
+
+    @Test
+    public void listDirectory_shouldPageThroughAllLevels() throws Exception {
+        Git git = new Git(remoteRepository);
+        File directory = new File(remoteDirectory, "dir");
+        FileUtils.writeStringToFile(new File(directory, "a"), "a");
+        FileUtils.writeStringToFile(new File(directory, "b/c"), "cc");
+        FileUtils.writeStringToFile(new File(directory, "b/d"), "ddd");
+        FileUtils.writeStringToFile(new File(directory, "e"), "eeee");
+        git.add().addFilepattern("dir").call();
+        RepositoryFixture.commit(git, "add directory");
+        service.update();
+
+        TreeListing listing = service.listDirectory("dir", null, 1, false, null, 10);
+        assertThat(listing.hasMore(), is(false));
+        assertThat(listing.getEntries().size(), is(3));
+        assertThat(listing.getEntries().get(1).getName(), is("b"));
+        assertThat(listing.getEntries().get(1).isDirectory(), is(true));
+
+        List<String> paths = new ArrayList<String>();
+        listing = service.listDirectory("dir", null, 0, true, null, 2);
+        while (true) {
+            for (TreeEntry entry : listing.getEntries()) {
+                paths.add(entry.getPath() + "=" + entry.getSize());
+            }
+            if (!listing.hasMore()) {
+                break;
+            }
+            listing = service.listDirectory(null, null, 0, true, listing.getCursor(), 2);
+        }
+        assertThat(paths.toString(), is("[a=1, b=-1, b/c=2, b/d=3, e=4]"));
+    }
+
+    @Test(expected = ScmException.class)
+    public void listMissingDirectory_shouldThrowException() throws Exception {
+        service.update();
+        service.listDirectory("missing", null, 1, false, null, 10);
+    }
+
+    @Test
+    public void export_shouldLeaveOutConnectorCaches() throws Exception {
+        service.update();
+        service.getPathHistory("testfile", null, null, 0);
+        assertThat(new File(localDirectory, ".git/openengsb").isDirectory(), is(true));
+        File exported = service.export().getFile();
+        assertThat(new File(exported, "testfile").isFile(), is(true));
+        assertThat(new File(exported, ".git/HEAD").isFile(), is(true));
+        assertThat(new File(exported, ".git/openengsb").exists(), is(false));
+    }
+
+    @Test
+    public void bulkAdd_shouldCommitAllFilesFromOnePack() throws Exception {
+        service.update();
+        File bulk = new File(localDirectory, "bulk");
+        for (int i = 0; i < 50; i++) {
+            FileUtils.writeStringToFile(new File(bulk, "dir" + i % 5 + "/file" + i), "content " + i % 25);
+        }
+        File testfile = new File(localDirectory, "testfile");
+        FileUtils.writeStringToFile(testfile, "changed\n");
+        File packDirectory = new File(localDirectory, ".git/objects/pack");
+        int packsBefore = packDirectory.isDirectory() ? packDirectory.list().length : 0;
+
+        CommitRef commit = service.bulkAdd("bulk import", bulk, testfile);
+
+        assertThat(commit.getStringRepresentation(), is(service.getHead().getStringRepresentation()));
+        assertThat(FileUtils.readFileToString(service.get("bulk/dir3/file8").getFile()), is("content 8"));
+        assertThat(FileUtils.readFileToString(service.get("testfile").getFile()), is("changed\n"));
+        assertThat(packDirectory.list().length, is(packsBefore + 2));
+        ObjectId blob = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, "content 8".getBytes());
+        File loose = new File(localDirectory, ".git/objects/" + blob.name().substring(0, 2) + "/"
+                + blob.name().substring(2));
+        assertThat(loose.exists(), is(false));
+        DirCache index = service.getRepository().readDirCache();
+        assertThat(index.getEntryCount(), is(51));
+    }
+
+    @Test
+    public void exportSubtree_shouldOnlyWriteSubtree() throws Exception {
+        Git git = new Git(remoteRepository);
+        FileUtils.writeStringToFile(new File(remoteDirectory, "module/src/a"), "a");
+        FileUtils.writeStringToFile(new File(remoteDirectory, "other/b"), "b");
+        git.add().addFilepattern("module").addFilepattern("other").call();
+        RepositoryFixture.commit(git, "add modules");
+        service.update();
+
+        File kept = service.export(null, "module", false).getFile();
+        assertThat(new File(kept, "module/src/a").isFile(), is(true));
+        assertThat(new File(kept, "other").exists(), is(false));
+        assertThat(new File(kept, "testfile").exists(), is(false));
+
+        File rerooted = service.export(null, "/module/", true).getFile();
+        assertThat(FileUtils.readFileToString(new File(rerooted, "src/a")), is("a"));
+        assertThat(rerooted.list().length, is(1));
+    }
+
+    @Test
+    public void updateBranches_shouldReportNewCommitsPerWatchedBranch() throws Exception {
+        Git git = new Git(remoteRepository);
+        git.branchCreate().setName("release/1").call();
+        git.branchCreate().setName("feature").call();
+        service.setBranches("master, release/*");
+
+        Map<String, List<CommitRef>> branches = service.updateBranches();
+        assertThat(branches.keySet().toString(), is("[master, release/1]"));
+        assertThat(branches.get("master").size(), is(1));
+        assertThat(branches.get("release/1").size(), is(1));
+
+        git.checkout().setName("release/1").call();
+        RepositoryFixture.addFile(git, "fix");
+        RepositoryFixture.commit(git, "fix release");
+        git.checkout().setName("master").call();
+        branches = service.updateBranches();
+        assertThat(branches.get("master").size(), is(0));
+        assertThat(branches.get("release/1").size(), is(1));
+        assertThat(new File(localDirectory, "fix").exists(), is(false));
+    }
+
+    @Test
+    public void getTags_shouldListTagsCreatedLocallyAndFetched() throws Exception {
+        Git remoteGit = new Git(remoteRepository);
+        remoteGit.tag().setName("remoteTag").call();
+        service.update();
+        service.tagRepo("localTag");
+        List<TagRef> tags = service.getTags();
+        assertThat(tags.size(), is(2));
+        assertThat(tags.get(0).getTagName(), is("localTag"));
+        assertThat(tags.get(1).getTagName(), is("remoteTag"));
+    }
+
+    @Test
+    public void getCommitRefsForTags_shouldResolveAllTagsToCommits() throws Exception {
+        service.update();
+        FileRepository localRepository = service.getRepository();
+        String head = localRepository.resolve(Constants.HEAD).name();
+        service.tagRepo("first");
+        service.tagRepo("second");
+        Map<String, CommitRef> commits = service.getCommitRefsForTags(service.getTags());
+        assertThat(commits.size(), is(2));
+        assertThat(commits.get("first").getStringRepresentation(), is(head));
+        assertThat(commits.get("second").getStringRepresentation(), is(head));
+    }
+
     @Test
     public void changeRemoteLocation_ShouldReadFromNewRemote() throws Exception {
         service.update();
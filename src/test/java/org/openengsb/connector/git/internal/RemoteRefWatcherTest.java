@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.junit.After;
+import org.junit.Test;
+import org.openengsb.domain.scm.CommitRef;
+import org.openengsb.domain.scm.ScmException;
+
+public class RemoteRefWatcherTest extends AbstractGitServiceImpl {
+
+    private final BlockingQueue<List<CommitRef>> changes = new LinkedBlockingQueue<List<CommitRef>>();
+
+    private final RemoteChangeListener listener = new RemoteChangeListener() {
+        @Override
+        public void remoteChanged(List<CommitRef> commits) {
+            changes.add(commits);
+        }
+
+        @Override
+        public void updateFailed(Exception e) {
+        }
+    };
+
+    @After
+    public void tearDown() {
+        service.stopWatching();
+    }
+
+    @Test
+    public void resolveRemoteGitDir_shouldFindDotGitOfWorkingCopy() {
+        assertThat(RemoteRefWatcher.resolveRemoteGitDir(service.getRemoteLocation()),
+            is(remoteRepository.getDirectory()));
+        assertThat(RemoteRefWatcher.resolveRemoteGitDir("git://example.org/repo.git"), nullValue());
+    }
+
+    @Test
+    public void commitToWatchedBranch_shouldTriggerUpdate() throws Exception {
+        service.startWatching(listener, 50, 60000);
+        List<CommitRef> initial = changes.poll(10, TimeUnit.SECONDS);
+        assertThat(initial, notNullValue());
+        assertThat(initial.size(), is(1));
+
+        Git git = new Git(remoteRepository);
+        RepositoryFixture.addFile(git, "second");
+        RepositoryFixture.commit(git, "second commit");
+
+        List<CommitRef> update = changes.poll(10, TimeUnit.SECONDS);
+        assertThat(update, notNullValue());
+        assertThat(update.get(0).getStringRepresentation(), is(remoteRepository.resolve(Constants.HEAD).name()));
+    }
+
+    @Test(expected = ScmException.class)
+    public void watchNonLocalRemote_shouldThrowSCMException() {
+        service.setRemoteLocation("git://example.org/repo.git");
+        service.startWatching(listener, 50, 60000);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openengsb.core.api.model.OpenEngSBFileModel;
+
+public class ScratchAreaTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void createScratchArea_shouldRemoveOrphans() throws Exception {
+        File root = temporaryFolder.newFolder("scratch");
+        File orphan = new File(root, "repository-1");
+        orphan.mkdir();
+        FileUtils.writeStringToFile(new File(orphan, "file"), "orphan");
+        new ScratchArea(root, 1024, HOUR, 0);
+        assertThat(root.isDirectory(), is(true));
+        assertThat(root.list().length, is(0));
+    }
+
+    @Test
+    public void trackFile_shouldAccountItsSize() throws Exception {
+        ScratchArea scratchArea = new ScratchArea(new File(temporaryFolder.getRoot(), "scratch"), 1024, HOUR, 0);
+        File file = scratchArea.createFile("test.txt");
+        FileUtils.writeStringToFile(file, "0123456789");
+        OpenEngSBFileModel model = scratchArea.track(file);
+        assertThat(model.getFile(), is(file));
+        assertThat(file.getName(), is("test.txt"));
+        assertThat(scratchArea.getUsage(), is(10L));
+        assertThat(scratchArea.getTrackedCount(), is(1));
+    }
+
+    @Test
+    public void exceedBudget_shouldKeepOutputsWithReachableModels() throws Exception {
+        ScratchArea scratchArea = new ScratchArea(new File(temporaryFolder.getRoot(), "scratch"), 15, 0, 0);
+        File first = scratchArea.createFile("first");
+        FileUtils.writeStringToFile(first, "0123456789");
+        OpenEngSBFileModel firstModel = scratchArea.track(first);
+        File second = scratchArea.createFile("second");
+        FileUtils.writeStringToFile(second, "01234567890123456789");
+        OpenEngSBFileModel secondModel = scratchArea.track(second);
+        scratchArea.cleanup();
+        assertThat(first.exists(), is(true));
+        assertThat(second.exists(), is(true));
+        assertThat(scratchArea.getUsage(), is(30L));
+        assertThat(firstModel.getFile(), is(first));
+        assertThat(secondModel.getFile(), is(second));
+    }
+
+    @Test
+    public void exceedBudget_shouldEvictReleasedOutputs() throws Exception {
+        ScratchArea scratchArea = new ScratchArea(new File(temporaryFolder.getRoot(), "scratch"), 15, HOUR, 0);
+        File first = scratchArea.createFile("first");
+        FileUtils.writeStringToFile(first, "0123456789");
+        scratchArea.track(first);
+        File second = scratchArea.createFile("second");
+        FileUtils.writeStringToFile(second, "01234567890123456789");
+        OpenEngSBFileModel secondModel = scratchArea.track(second);
+        awaitEviction(scratchArea, first);
+        assertThat(second.exists(), is(true));
+        assertThat(scratchArea.getUsage(), is(20L));
+        assertThat(secondModel.getFile(), is(second));
+    }
+
+    @Test
+    public void expiredOutput_shouldBeEvictedOnceReleased() throws Exception {
+        ScratchArea scratchArea = new ScratchArea(new File(temporaryFolder.getRoot(), "scratch"), 1024, 0, 0);
+        File directory = scratchArea.createDirectory("repository");
+        FileUtils.writeStringToFile(new File(directory, "file"), "content");
+        scratchArea.track(directory);
+        awaitEviction(scratchArea, directory);
+        assertThat(scratchArea.getUsage(), is(0L));
+    }
+
+    @Test
+    public void releasedOutput_shouldBeKeptUntilExpired() throws Exception {
+        ScratchArea scratchArea = new ScratchArea(new File(temporaryFolder.getRoot(), "scratch"), 1024, HOUR, 0);
+        File file = scratchArea.createFile("file");
+        FileUtils.writeStringToFile(file, "content");
+        scratchArea.track(file);
+        awaitRelease(scratchArea);
+        assertThat(file.exists(), is(true));
+        scratchArea.setMaxAge(0);
+        scratchArea.cleanup();
+        assertThat(file.exists(), is(false));
+    }
+
+    @Test
+    public void releasedOutput_shouldBeKeptForGracePeriodOverBudget() throws Exception {
+        ScratchArea scratchArea = new ScratchArea(new File(temporaryFolder.getRoot(), "scratch"), 5, 0, HOUR);
+        File file = scratchArea.createFile("file");
+        FileUtils.writeStringToFile(file, "0123456789");
+        scratchArea.track(file);
+        awaitRelease(scratchArea);
+        assertThat(file.exists(), is(true));
+        scratchArea.setGracePeriod(0);
+        scratchArea.cleanup();
+        assertThat(file.exists(), is(false));
+    }
+
+    /**
+     * Waits until the model of the only tracked output was collected and noticed by a cleanup.
+     */
+    private static void awaitRelease(ScratchArea scratchArea) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!scratchArea.hasReleased() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            scratchArea.cleanup();
+        }
+        assertThat(scratchArea.hasReleased(), is(true));
+    }
+
+    private static void awaitEviction(ScratchArea scratchArea, File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (file.exists() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            scratchArea.cleanup();
+        }
+        assertThat(file.exists(), is(false));
+    }
+}
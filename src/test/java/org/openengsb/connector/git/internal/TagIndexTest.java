@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TagIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void lightweightTagsOfSameCommit_shouldAllBeIndexedById() throws Exception {
+        FileRepository repository = RepositoryFixture.createRepository(temporaryFolder.newFolder("repository"));
+        ObjectId head = repository.resolve(Constants.HEAD);
+        createLightweightTag(repository, "first", head);
+        createLightweightTag(repository, "second", head);
+
+        TagIndex index = new TagIndex(repository);
+        assertThat(index.getAllByTagId(head).size(), is(2));
+        assertThat(index.getByTagId(head).getName(), is("first"));
+
+        RefUpdate delete = repository.updateRef(Constants.R_TAGS + "first");
+        delete.setForceUpdate(true);
+        delete.delete();
+        index.refresh();
+        assertThat(index.getAllByTagId(head).size(), is(1));
+        assertThat(index.getByTagId(head).getName(), is("second"));
+        repository.close();
+    }
+
+    private static void createLightweightTag(FileRepository repository, String name, ObjectId id) throws Exception {
+        RefUpdate update = repository.updateRef(Constants.R_TAGS + name);
+        update.setNewObjectId(id);
+        update.update();
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.transport.Daemon;
+import org.eclipse.jgit.transport.DaemonClient;
+import org.eclipse.jgit.transport.resolver.RepositoryResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark of {@code update()} over different transports and repository shapes. Generated repositories are served
+ * from the file system and by an in-process git daemon, which is reached through a proxy adding latency and limiting
+ * bandwidth. For every combination the initial clone, a poll without changes and an incremental fetch of one new
+ * commit are timed. It runs too long to be run automatically.
+ * <p>
+ * The setup can be tuned with the system properties {@code benchmark.files} (files of the wide repository),
+ * {@code benchmark.commits} (commits of the deep repository), {@code benchmark.latency} (round trip time in
+ * milliseconds), {@code benchmark.bandwidth} (bytes per second, {@code 0} for unlimited) and
+ * {@code benchmark.rounds}.
+ */
+public class TransportBenchmarkUT {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransportBenchmarkUT.class);
+
+    private static final String[] SHAPES = { "wide", "deep" };
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final int files = Integer.getInteger("benchmark.files", 2000);
+    private final int commits = Integer.getInteger("benchmark.commits", 500);
+    private final long latency = Long.getLong("benchmark.latency", 50);
+    private final long bandwidth = Long.getLong("benchmark.bandwidth", 1024 * 1024);
+    private final int rounds = Integer.getInteger("benchmark.rounds", 5);
+
+    private final Map<String, File> repositories = new HashMap<String, File>();
+    private Daemon daemon;
+    private ThrottlingProxy proxy;
+    private int instanceCounter;
+
+    @Before
+    public void setup() throws Exception {
+        generateWide(files);
+        generateDeep(commits);
+        daemon = new Daemon(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        daemon.setRepositoryResolver(new RepositoryResolver<DaemonClient>() {
+            @Override
+            public Repository open(DaemonClient client, String name) throws RepositoryNotFoundException {
+                File directory = repositories.get(name.replaceAll("^/+", ""));
+                if (directory == null) {
+                    throw new RepositoryNotFoundException(name);
+                }
+                try {
+                    // the daemon closes the repository when the request is done
+                    return new FileRepository(new File(directory, ".git"));
+                } catch (IOException e) {
+                    throw new RepositoryNotFoundException(name);
+                }
+            }
+        });
+        daemon.start();
+        proxy = new ThrottlingProxy(daemon.getAddress().getPort(), latency / 2, bandwidth);
+        proxy.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (proxy != null) {
+            proxy.stop();
+        }
+        if (daemon != null) {
+            daemon.stop();
+        }
+    }
+
+    @Test
+    public void update_shouldMeasureCloneEmptyPollAndIncrementalFetch() throws Exception {
+        LOGGER.info("Transport benchmark: {} files, {} commits, {} ms round trip, {} bytes/s, {} rounds",
+            new Object[]{ files, commits, latency, bandwidth, rounds });
+        for (String shape : SHAPES) {
+            String fileLocation = repositories.get(shape).toURI().toURL().toExternalForm().replace("%20", " ");
+            measure("file", shape, fileLocation);
+            measure("git", shape, "git://127.0.0.1:" + proxy.getPort() + "/" + shape);
+        }
+    }
+
+    private void measure(String protocol, String shape, String location) throws Exception {
+        long clone = 0;
+        long poll = 0;
+        long fetch = 0;
+        Git remote = new Git(new FileRepository(new File(repositories.get(shape), ".git")));
+        for (int round = 0; round < rounds; round++) {
+            GitServiceImpl service = new GitServiceImpl("benchmark" + instanceCounter++);
+            File workspace = tempFolder.newFolder("local" + instanceCounter);
+            service.setLocalWorkspace(workspace.getAbsolutePath());
+            service.setRemoteLocation(location);
+            service.setWatchBranch("master");
+
+            long start = System.nanoTime();
+            assertThat(service.update().isEmpty(), is(false));
+            clone += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertThat(service.update().size(), is(0));
+            poll += System.nanoTime() - start;
+
+            String name = "incremental" + instanceCounter;
+            RepositoryFixture.addFile(remote, name);
+            RepositoryFixture.commit(remote, "add " + name);
+            start = System.nanoTime();
+            assertThat(service.update().size(), is(1));
+            fetch += System.nanoTime() - start;
+
+            FileUtils.deleteQuietly(workspace);
+        }
+        remote.getRepository().close();
+        LOGGER.info(String.format("%-4s %-4s: clone %8.1f ms, no-op poll %8.1f ms, incremental fetch %8.1f ms",
+            protocol, shape, millis(clone), millis(poll), millis(fetch)));
+    }
+
+    private double millis(long totalNanos) {
+        return totalNanos / (rounds * 1000000.0);
+    }
+
+    /**
+     * One commit of {@code count} files spread over a hundred directories.
+     */
+    private void generateWide(int count) throws Exception {
+        File directory = tempFolder.newFolder("wide");
+        FileRepository repository = RepositoryFixture.createRepository(directory);
+        Git git = new Git(repository);
+        for (int i = 0; i < count; i++) {
+            File file = new File(directory, "dir" + i % 100 + "/file" + i);
+            FileUtils.writeStringToFile(file, "content of file " + i + "\n");
+        }
+        git.add().addFilepattern(".").call();
+        RepositoryFixture.commit(git, "add " + count + " files");
+        repository.close();
+        repositories.put("wide", directory);
+    }
+
+    /**
+     * A history of {@code count} commits, each changing one small file.
+     */
+    private void generateDeep(int count) throws Exception {
+        File directory = tempFolder.newFolder("deep");
+        FileRepository repository = RepositoryFixture.createRepository(directory);
+        Git git = new Git(repository);
+        for (int i = 0; i < count; i++) {
+            FileUtils.writeStringToFile(new File(directory, "file" + i % 10), "revision " + i + "\n");
+            git.add().addFilepattern("file" + i % 10).call();
+            RepositoryFixture.commit(git, "commit " + i);
+        }
+        repository.close();
+        repositories.put("deep", directory);
+    }
+
+    /**
+     * TCP proxy delaying every chunk by a fixed one-way latency in each direction and limiting the throughput of
+     * each direction to {@code bandwidth} bytes per second.
+     */
+    private static final class ThrottlingProxy {
+        private final int targetPort;
+        private final long oneWayLatency;
+        private final long bandwidth;
+        private final List<Socket> sockets = new ArrayList<Socket>();
+        private ServerSocket serverSocket;
+        private Thread acceptor;
+
+        private ThrottlingProxy(int targetPort, long oneWayLatency, long bandwidth) {
+            this.targetPort = targetPort;
+            this.oneWayLatency = oneWayLatency;
+            this.bandwidth = bandwidth;
+        }
+
+        public void start() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            acceptor = daemonThread("benchmark-proxy", new Runnable() {
+                @Override
+                public void run() {
+                    while (!serverSocket.isClosed()) {
+                        try {
+                            Socket client = serverSocket.accept();
+                            Socket target = new Socket(InetAddress.getByName("127.0.0.1"), targetPort);
+                            synchronized (sockets) {
+                                sockets.add(client);
+                                sockets.add(target);
+                            }
+                            pipe(client, target);
+                            pipe(target, client);
+                        } catch (IOException e) {
+                            if (!serverSocket.isClosed()) {
+                                LOGGER.warn("Proxy connection failed", e);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        public int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void stop() throws IOException {
+            serverSocket.close();
+            acceptor.interrupt();
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    socket.close();
+                }
+                sockets.clear();
+            }
+        }
+
+        /**
+         * Forwards one direction of a connection with a reader thread queueing timestamped chunks and a writer
+         * thread sending each chunk once its latency has passed, paced to the bandwidth limit.
+         */
+        private void pipe(final Socket from, final Socket to) throws IOException {
+            final InputStream in = from.getInputStream();
+            final OutputStream out = to.getOutputStream();
+            final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<Chunk>();
+            daemonThread("benchmark-proxy-read", new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[8192];
+                    try {
+                        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                            chunks.add(new Chunk(Arrays.copyOf(buffer, read), System.nanoTime()));
+                        }
+                    } catch (IOException e) {
+                        LOGGER.trace("Proxy read ended", e);
+                    }
+                    chunks.add(new Chunk(null, System.nanoTime()));
+                }
+            });
+            daemonThread("benchmark-proxy-write", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (Chunk chunk = chunks.take(); chunk.data != null; chunk = chunks.take()) {
+                            long wait = TimeUnit.NANOSECONDS.toMillis(chunk.received - System.nanoTime())
+                                    + oneWayLatency;
+                            if (wait > 0) {
+                                Thread.sleep(wait);
+                            }
+                            out.write(chunk.data);
+                            out.flush();
+                            if (bandwidth > 0) {
+                                Thread.sleep(chunk.data.length * 1000L / bandwidth);
+                            }
+                        }
+                        to.shutdownOutput();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException e) {
+                        LOGGER.trace("Proxy write ended", e);
+                    }
+                }
+            });
+        }
+
+        private static Thread daemonThread(String name, Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+    }
+
+    private static final class Chunk {
+        private final byte[] data;
+        private final long received;
+
+        private Chunk(byte[] data, long received) {
+            this.data = data;
+            this.received = received;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.git.internal;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.junit.Test;
+
+public class WindowCacheTunerTest {
+    private static final long GB = 1024L * WindowCacheTuner.MB;
+
+    @Test
+    public void computeConfigForSmallPacks_shouldKeepJGitDefaults() {
+        WindowCacheConfig config = WindowCacheTuner.computeConfig(WindowCacheTuner.MB, 1, GB,
+            new WindowCacheProfile());
+        assertThat(config.getPackedGitLimit(), is(10L * WindowCacheTuner.MB));
+        assertThat(config.getPackedGitWindowSize(), is(8 * WindowCacheTuner.KB));
+        assertThat(config.getDeltaBaseCacheLimit(), is(10 * WindowCacheTuner.MB));
+        assertThat(config.isPackedGitMMAP(), is(false));
+    }
+
+    @Test
+    public void computeConfigForLargePacks_shouldBeBoundedByHeap() {
+        WindowCacheConfig config = WindowCacheTuner.computeConfig(8 * GB, 4, 2 * GB, new WindowCacheProfile());
+        assertThat(config.getPackedGitLimit(), is(512L * WindowCacheTuner.MB));
+        assertThat(config.getPackedGitWindowSize(), is(512 * WindowCacheTuner.KB));
+        assertThat((long) config.getDeltaBaseCacheLimit(), lessThanOrEqualTo(2 * GB / 16));
+    }
+
+    @Test
+    public void computeConfigWithMMAP_shouldNotBeBoundedByHeap() {
+        WindowCacheProfile profile = new WindowCacheProfile();
+        profile.setPackedGitMMAP(true);
+        WindowCacheConfig config = WindowCacheTuner.computeConfig(8 * GB, 4, 2 * GB, profile);
+        assertThat(config.isPackedGitMMAP(), is(true));
+        assertThat(config.getPackedGitLimit(), is(8 * GB));
+        assertThat(config.getPackedGitWindowSize(), greaterThan(WindowCacheTuner.MB));
+    }
+
+    @Test
+    public void computeConfigWithOverrides_shouldUseOverrides() {
+        WindowCacheProfile profile = new WindowCacheProfile();
+        profile.setPackedGitLimit(WindowCacheProfile.parseSize("256m"));
+        profile.setPackedGitWindowSize(WindowCacheProfile.parseSize("64k").intValue());
+        profile.setDeltaBaseCacheLimit(WindowCacheProfile.parseSize("32m").intValue());
+        WindowCacheConfig config = WindowCacheTuner.computeConfig(8 * GB, 4, 2 * GB, profile);
+        assertThat(config.getPackedGitLimit(), is(256L * WindowCacheTuner.MB));
+        assertThat(config.getPackedGitWindowSize(), is(64 * WindowCacheTuner.KB));
+        assertThat(config.getDeltaBaseCacheLimit(), is(32 * WindowCacheTuner.MB));
+    }
+
+    @Test
+    public void mergeProfiles_shouldTakeLargerValues() {
+        WindowCacheProfile first = new WindowCacheProfile();
+        first.setPackedGitLimit(100L);
+        first.setPackedGitMMAP(false);
+        WindowCacheProfile second = new WindowCacheProfile();
+        second.setPackedGitLimit(200L);
+        second.setPackedGitMMAP(true);
+        WindowCacheProfile merged = first.merge(second);
+        assertThat(merged.getPackedGitLimit(), is(200L));
+        assertThat(merged.getPackedGitMMAP(), is(true));
+    }
+}